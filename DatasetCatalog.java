@@ -0,0 +1,485 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ DatasetCatalog keeps the names of the '.txt' files under a folder up to date
+ The folder and its subfolders are scanned once, then a WatchService reports
+ every file that is created, deleted or modified, so nothing is scanned again
+ A name is the path from the folder without '.txt', with '/' between folders
+ Listeners are called on the watching thread, not on the JavaFX Application Thread
+ The names and titles are kept in a snapshot file, so a folder of many thousands of files is known at once
+ start reads the snapshot, the scan runs on the watching thread and reconciles it with the folder
+ The title of a file is its first line, it is read once for every version of the file
+ */
+public class DatasetCatalog {
+    static final String EXTENSION = ".txt";
+    static DatasetCatalog workingDirectory;
+    //the snapshot file, relative to the folder unless -Dsankey.catalog.snapshot gives another path
+    static final String SNAPSHOT = System.getProperty("sankey.catalog.snapshot", ".sankey-catalog");
+    static final int SNAPSHOT_MAGIC = 0x53414E4B;
+    static final int SNAPSHOT_VERSION = 1;
+    //the shared length, the name length, the title length, the size and the modification time of an entry
+    static final int RECORD_BYTES = 3 * 4 + 2 * 8;
+    //changes are written to the snapshot when nothing has changed for SAVE_DELAY milliseconds
+    static final long SAVE_DELAY = 2000;
+    //only the start of a long first line is kept as the title
+    static final int TITLE_BYTES = 1024;
+
+    final Path root;
+    final Path snapshot;
+    //what is known about every file, by name, loadSnapshot replaces it before the scan starts
+    volatile Map<String, Entry> entries = new ConcurrentHashMap<>();
+    //changed is set when the entries differ from the snapshot file
+    volatile boolean changed;
+    final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    //the folders being watched, by their watch key
+    final Map<WatchKey, Path> folders = new HashMap<>();
+    WatchService watchService;
+    Thread thread;
+
+    //    Listener hears about the changes of the catalog
+    public interface Listener {
+        void added(String name);
+
+        void removed(String name);
+
+        //    The content of the file has changed, the name is still there
+        default void modified(String name){
+        }
+    }
+
+    public DatasetCatalog(Path root){
+        this.root = root.toAbsolutePath().normalize();
+        this.snapshot = this.root.resolve(SNAPSHOT);
+    }
+
+    //    What the catalog knows about one file, title is null until the first line has been read
+    static final class Entry {
+        final long size;
+        final long modified;
+        final String title;
+
+        Entry(long size, long modified, String title){
+            this.size = size;
+            this.modified = modified;
+            this.title = title;
+        }
+    }
+
+    //    The catalog of the project folder, shared by the launcher and the diagram windows
+    public static synchronized DatasetCatalog forWorkingDirectory(){
+        if (workingDirectory == null){
+            workingDirectory = new DatasetCatalog(Paths.get(System.getProperty("user.dir")));
+            try {
+                workingDirectory.start();
+            }
+            catch (IOException ioe){
+                System.out.println("Can not watch " + workingDirectory.root + ": " + ioe.getMessage());
+            }
+        }
+        return workingDirectory;
+    }
+
+    public Path getRoot(){
+        return root;
+    }
+
+    //    A copy of the names at this moment
+    public Set<String> names(){
+        return new HashSet<>(entries.keySet());
+    }
+
+    public boolean contains(String name){
+        return entries.containsKey(name);
+    }
+
+    //    The first line of the file, null while it has not been read yet
+    public String titleOf(String name){
+        Entry entry = entries.get(name);
+        return entry == null ? null : entry.title;
+    }
+
+    public void addListener(Listener listener){
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener){
+        listeners.remove(listener);
+    }
+
+    //    Take the names of the snapshot, then scan the folder, register every subfolder and watch in a daemon thread
+    public synchronized void start() throws IOException{
+        if (thread != null){
+            return;
+        }
+        watchService = root.getFileSystem().newWatchService();
+        loadSnapshot();
+        thread = new Thread(() -> {
+            try {
+                reconcile();
+                readTitles();
+                saveSnapshot();
+                watch();
+            }
+            catch (ClosedWatchServiceException stopped){
+//                stop was called while the folder was scanned
+            }
+        }, "sankey-catalog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop(){
+        if (thread == null){
+            return;
+        }
+        thread.interrupt();
+        try {
+            watchService.close();
+        }
+        catch (IOException ioe){
+            System.out.println(ioe.getMessage());
+        }
+        thread = null;
+    }
+
+    //    Watch a folder and everything under it and add the files found there
+    //    Hidden folders such as .git are skipped, found gets the names of all files under it when it is not null
+    void registerAll(Path start, Set<String> found) throws IOException{
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>(){
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException{
+                if (!dir.equals(root) && dir.getFileName().toString().startsWith(".")){
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                synchronized (folders){
+                    folders.put(key, dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes){
+                if (attributes.isRegularFile()){
+                    String name = add(file, attributes);
+                    if (found != null && name != null){
+                        found.add(name);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ioe){
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    void watch(){
+        while (!Thread.currentThread().isInterrupted()){
+            WatchKey key;
+            try {
+                key = watchService.poll(SAVE_DELAY, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException | ClosedWatchServiceException e){
+                return;
+            }
+            if (key == null){
+                if (changed){
+                    readTitles();
+                    saveSnapshot();
+                }
+                continue;
+            }
+            Path dir;
+            synchronized (folders){
+                dir = folders.get(key);
+            }
+            if (dir != null){
+                for (WatchEvent<?> event : key.pollEvents()){
+                    handle(dir, event);
+                }
+            }
+            if (!key.reset()){
+                synchronized (folders){
+                    folders.remove(key);
+                }
+                if (dir != null){
+                    removeUnder(dir);
+                }
+            }
+        }
+    }
+
+    void handle(Path dir, WatchEvent<?> event){
+        if (event.kind() == OVERFLOW){
+            reconcile();
+            return;
+        }
+        Path path = dir.resolve((Path) event.context());
+        if (event.kind() == ENTRY_CREATE){
+            if (Files.isDirectory(path)){
+                try {
+                    registerAll(path, null);
+                }
+                catch (IOException ioe){
+                    System.out.println(ioe.getMessage());
+                }
+            }
+            else {
+                add(path);
+            }
+        }
+        else if (event.kind() == ENTRY_DELETE){
+            remove(nameOf(path));
+//            A deleted folder takes the names under it away
+            removeUnder(path);
+        }
+        else if (event.kind() == ENTRY_MODIFY){
+            String name = nameOf(path);
+            if (name != null && entries.containsKey(name)){
+                add(path);
+                for (Listener listener : listeners){
+                    listener.modified(name);
+                }
+            }
+        }
+    }
+
+    void add(Path file){
+        try {
+            add(file, Files.readAttributes(file, BasicFileAttributes.class));
+        }
+        catch (IOException ioe){
+//            The file is already gone again, its delete event follows
+        }
+    }
+
+    //    Add a file or note its new version, the title is read later by readTitles
+    String add(Path file, BasicFileAttributes attributes){
+        String name = nameOf(file);
+        if (name == null || !attributes.isRegularFile()){
+            return null;
+        }
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Entry old = entries.get(name);
+        if (old != null && old.size == size && old.modified == modified){
+            return name;
+        }
+        entries.put(name, new Entry(size, modified, null));
+        changed = true;
+        if (old == null){
+            for (Listener listener : listeners){
+                listener.added(name);
+            }
+        }
+        return name;
+    }
+
+    void remove(String name){
+        if (name != null && entries.remove(name) != null){
+            changed = true;
+            for (Listener listener : listeners){
+                listener.removed(name);
+            }
+        }
+    }
+
+    void removeUnder(Path dir){
+        String prefix = root.relativize(dir).toString().replace(File.separatorChar, '/') + "/";
+        if (prefix.equals("/")){
+            return;
+        }
+        for (String name : names()){
+            if (name.startsWith(prefix)){
+                remove(name);
+            }
+        }
+    }
+
+    //    Scan the whole folder, names of the snapshot or of lost events that are not found any more are removed
+    //    Registering again adds the new files and watches the new folders
+    void reconcile(){
+        Set<String> found = new HashSet<>();
+        try {
+            registerAll(root, found);
+        }
+        catch (IOException ioe){
+            System.out.println(ioe.getMessage());
+            return;
+        }
+        for (String name : names()){
+            if (!found.contains(name)){
+                remove(name);
+            }
+        }
+    }
+
+    //    Read the first line of every file whose title is not known for its current version
+    void readTitles(){
+        for (Map.Entry<String, Entry> known : entries.entrySet()){
+            Entry entry = known.getValue();
+            if (entry.title != null){
+                continue;
+            }
+            String title = readTitle(root.resolve(known.getKey() + EXTENSION));
+            if (title != null){
+//                Only if the file did not change again in the meantime
+                entries.replace(known.getKey(), entry, new Entry(entry.size, entry.modified, title));
+                changed = true;
+            }
+        }
+    }
+
+    //    The first line of a file like SankeyDataset reads it, or null when the file can not be read
+    static String readTitle(Path file){
+        byte[] bytes = new byte[TITLE_BYTES];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(file)){
+            int read;
+            while (length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) > 0){
+                length += read;
+            }
+        }
+        catch (IOException ioe){
+            return null;
+        }
+        int end = 0;
+        while (end < length && bytes[end] != '\n'){
+            end++;
+        }
+        return new String(bytes, 0, end, StandardCharsets.UTF_8).stripTrailing();
+    }
+
+    //    Take the entries of the last run, a snapshot of another folder, an old one or a broken one is not used
+    //    After the header come RECORD_BYTES for every entry and then one block with the text of all of them,
+    //    a name is stored as the number of chars shared with the name before and the rest, the names are sorted
+    void loadSnapshot(){
+        if (!Files.isRegularFile(snapshot)){
+            return;
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(snapshot))){
+            ByteBuffer buffer = ByteBuffer.wrap(in.readAllBytes());
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION || !text(buffer, buffer.getInt()).equals(root.toString())){
+                return;
+            }
+            int count = buffer.getInt();
+//            A map of the right size from the start, growing it step by step costs as much as the reading
+            Map<String, Entry> loaded = new ConcurrentHashMap<>(count);
+            byte[] bytes = buffer.array();
+            int textAt = buffer.position() + count * RECORD_BYTES;
+            String previous = "";
+            for (int i = 0; i < count; i++){
+                int shared = buffer.getInt();
+                int nameLength = buffer.getInt();
+                int titleLength = buffer.getInt();
+                long size = buffer.getLong();
+                long modified = buffer.getLong();
+                String name = previous.substring(0, shared) + new String(bytes, textAt, nameLength, StandardCharsets.UTF_8);
+                textAt += nameLength;
+                String title = null;
+                if (titleLength >= 0){
+                    title = new String(bytes, textAt, titleLength, StandardCharsets.UTF_8);
+                    textAt += titleLength;
+                }
+                loaded.put(name, new Entry(size, modified, title));
+                previous = name;
+            }
+            entries = loaded;
+        }
+        catch (IOException | RuntimeException e){
+            System.out.println("Can not read " + snapshot + ": " + e.getMessage());
+        }
+    }
+
+    static String text(ByteBuffer buffer, int length){
+        String text = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return text;
+    }
+
+    //    Write the entries to a new file and move it over the snapshot, so a reader never sees half of it
+    //    A folder that can not be written to just has no snapshot
+    void saveSnapshot(){
+        changed = false;
+        List<Map.Entry<String, Entry>> sorted = new ArrayList<>(entries.entrySet());
+        sorted.sort(Map.Entry.comparingByKey());
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temp))))){
+                byte[] rootBytes = root.toString().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(rootBytes.length);
+                out.write(rootBytes);
+                out.writeInt(sorted.size());
+                String previous = "";
+                for (Map.Entry<String, Entry> known : sorted){
+                    String name = known.getKey();
+                    Entry entry = known.getValue();
+                    int shared = 0;
+                    int most = Math.min(name.length(), previous.length());
+                    while (shared < most && name.charAt(shared) == previous.charAt(shared)){
+                        shared++;
+                    }
+//                    A pair of surrogates is never split, the rest must be a String of its own
+                    if (shared > 0 && Character.isHighSurrogate(name.charAt(shared - 1))){
+                        shared--;
+                    }
+                    byte[] nameBytes = name.substring(shared).getBytes(StandardCharsets.UTF_8);
+                    byte[] titleBytes = entry.title == null ? null : entry.title.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(shared);
+                    out.writeInt(nameBytes.length);
+                    out.writeInt(titleBytes == null ? -1 : titleBytes.length);
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.modified);
+                    text.write(nameBytes);
+                    if (titleBytes != null){
+                        text.write(titleBytes);
+                    }
+                    previous = name;
+                }
+                text.writeTo(out);
+            }
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ioe){
+            System.out.println("Can not write " + snapshot + ": " + ioe.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            }
+            catch (IOException again){
+//                Nothing more can be done, the next save tries again
+            }
+        }
+    }
+
+    //    The catalog name of a file, or null when it is not a '.txt' file under the folder
+    String nameOf(Path file){
+        String fileName = file.getFileName().toString();
+        if (!fileName.endsWith(EXTENSION)){
+            return null;
+        }
+        Path relative = root.relativize(file.toAbsolutePath().normalize());
+        for (Path part : relative){
+            if (part.toString().startsWith(".") && !part.equals(relative.getFileName())){
+                return null;
+            }
+        }
+        String name = relative.toString().replace(File.separatorChar, '/');
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+}
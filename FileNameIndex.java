@@ -0,0 +1,199 @@
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ FileNameIndex finds the names that contain every character the user has typed
+ For each character it keeps the set of names containing it, so a query is a few set intersections
+ instead of a scan of every name with indexOf
+ When the user keeps typing, the next query starts from the matches of the previous one
+ Names can be added and removed at any time, the index is never rebuilt
+ */
+public class FileNameIndex {
+    //names by id, a removed name leaves a null until the id is used again
+    final List<String> names = new ArrayList<>();
+    final Map<String, Integer> ids = new HashMap<>();
+    //postings tells which ids contain a character
+    final Map<Character, BitSet> postings = new HashMap<>();
+    //live is the set of ids in use
+    final BitSet live = new BitSet();
+    //ids that were freed by remove
+    final Deque<Integer> freeIds = new ArrayDeque<>();
+
+    //the last query and its matches, used when the next query only adds characters
+    String lastQuery;
+    BitSet lastMatches;
+
+    public FileNameIndex(){
+    }
+
+    public FileNameIndex(Collection<String> names){
+        for (String name : names){
+            add(name);
+        }
+    }
+
+    public synchronized int size(){
+        return ids.size();
+    }
+
+    public synchronized boolean contains(String name){
+        return ids.containsKey(name);
+    }
+
+    public synchronized void add(String name){
+        if (ids.containsKey(name)){
+            return;
+        }
+        int id = freeIds.isEmpty() ? names.size() : freeIds.pop();
+        if (id == names.size()){
+            names.add(name);
+        }
+        else {
+            names.set(id, name);
+        }
+        ids.put(name, id);
+        live.set(id);
+        for (int i = 0; i < name.length(); i++){
+            postings.computeIfAbsent(name.charAt(i), c -> new BitSet()).set(id);
+        }
+        lastQuery = null;
+    }
+
+    public synchronized void remove(String name){
+        Integer id = ids.remove(name);
+        if (id == null){
+            return;
+        }
+        for (int i = 0; i < name.length(); i++){
+            BitSet set = postings.get(name.charAt(i));
+            set.clear(id);
+            if (set.isEmpty()){
+                postings.remove(name.charAt(i));
+            }
+        }
+        live.clear(id);
+        names.set(id, null);
+        freeIds.push(id);
+        lastQuery = null;
+    }
+
+    //    Find the names containing every character of text, best first and at most limit of them
+    //    Names starting with the text come first, then names containing it, then the rest
+    //    Inside each group shorter names come first, then alphabetical order
+    public synchronized Result query(String text, int limit){
+        BitSet matches;
+        int from;
+        if (lastQuery != null && text.startsWith(lastQuery)){
+            matches = (BitSet) lastMatches.clone();
+            from = lastQuery.length();
+        }
+        else {
+            matches = (BitSet) live.clone();
+            from = 0;
+        }
+        for (int i = from; i < text.length() && !matches.isEmpty(); i++){
+            BitSet set = postings.get(text.charAt(i));
+            if (set == null){
+                matches.clear();
+            }
+            else {
+                matches.and(set);
+            }
+        }
+        lastQuery = text;
+        lastMatches = matches;
+        if (limit <= 0){
+            return new Result(List.of(), matches.cardinality());
+        }
+
+//        Keep the best limit names in a heap whose head is the worst of them
+//        The rank and length of a name are worked out once and packed into one number
+        PriorityQueue<Candidate> best = new PriorityQueue<>(limit + 1, Comparator.reverseOrder());
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)){
+            String name = names.get(id);
+            long key = ((long) rank(name, text) << 32) | name.length();
+            if (best.size() == limit && key > best.peek().key){
+                continue;
+            }
+            best.add(new Candidate(key, name));
+            if (best.size() > limit){
+                best.poll();
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(best);
+        Collections.sort(sorted);
+        List<String> top = new ArrayList<>(sorted.size());
+        for (Candidate candidate : sorted){
+            top.add(candidate.name);
+        }
+        return new Result(top, matches.cardinality());
+    }
+
+    static int rank(String name, String text){
+        if (name.startsWith(text)){
+            return 0;
+        }
+        if (name.contains(text)){
+            return 1;
+        }
+        return 2;
+    }
+
+    //    A matching name with its packed rank and length, ties are broken alphabetically
+    static final class Candidate implements Comparable<Candidate> {
+        final long key;
+        final String name;
+
+        Candidate(long key, String name){
+            this.key = key;
+            this.name = name;
+        }
+
+        @Override
+        public int compareTo(Candidate other){
+            int compare = Long.compare(key, other.key);
+            return compare != 0 ? compare : name.compareTo(other.name);
+        }
+    }
+
+    //    The best names of a query and how many names matched in total
+    public static final class Result {
+        final List<String> names;
+        final int total;
+
+        Result(List<String> names, int total){
+            this.names = names;
+            this.total = total;
+        }
+
+        public List<String> getNames(){
+            return names;
+        }
+
+        public int getTotal(){
+            return total;
+        }
+
+        //    The names one per line, as shown in the tip
+        public String toTipText(){
+            return toTipText(name -> null);
+        }
+
+        //    The names one per line, each followed by its title when titles knows one
+        public String toTipText(Function<String, String> titles){
+            StringBuilder builder = new StringBuilder();
+            for (String name : names){
+                builder.append(name);
+                String title = titles.apply(name);
+                if (title != null && !title.isEmpty()){
+                    builder.append("  (").append(title).append(')');
+                }
+                builder.append('\n');
+            }
+            if (total > names.size()){
+                builder.append("... and ").append(total - names.size()).append(" more\n");
+            }
+            return builder.toString();
+        }
+    }
+}
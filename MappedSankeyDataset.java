@@ -0,0 +1,240 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.DoubleConsumer;
+
+/**
+ MappedSankeyDataset reads very large input files through FileChannel.map
+ The value of each row is parsed straight from the mapped bytes
+ A label is not turned into a String when the file is read
+ Only its position is recorded, getLabel decodes it when it is really shown
+ So the heap holds a few numbers per row instead of Strings and split arrays
+ */
+public class MappedSankeyDataset extends SankeyDataset {
+    //files of this size or bigger are mapped by SankeyDataset.load
+    static final long MAPPED_THRESHOLD = 64L * 1024 * 1024;
+    //a mapping can not be bigger than Integer.MAX_VALUE, big files are mapped in segments
+    static final int SEGMENT_SIZE = 1 << 30;
+
+    //segments keep the mapped file alive after the channel is closed
+    final MappedByteBuffer[] segments;
+    //labelPositions packs the segment index in the high half and the offset in the low half
+    final long[] labelPositions;
+    //labelLengths is the number of bytes of each label
+    final int[] labelLengths;
+
+    MappedSankeyDataset(String title, String source, long[] values,
+                        MappedByteBuffer[] segments, long[] labelPositions, int[] labelLengths){
+        super(title, source, null, values);
+        this.segments = segments;
+        this.labelPositions = labelPositions;
+        this.labelLengths = labelLengths;
+    }
+
+    //    Decode the label from the mapped file, nothing is kept after it is returned
+    @Override
+    public String getLabel(int index){
+        long position = labelPositions[index];
+        MappedByteBuffer segment = segments[(int) (position >>> 32)];
+        byte[] bytes = new byte[labelLengths[index]];
+        segment.get((int) position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //    The file itself is mapped and not on the heap, only the numbers of every row count
+    @Override
+    public long estimateBytes(){
+        return 64 + 20L * values.length;
+    }
+
+    public static MappedSankeyDataset load(Path path) throws LoadException{
+        return load(path, null);
+    }
+
+    //    Map the file segment by segment and scan every line once
+    //    progress gets the part of the file read so far, it may be null
+    public static MappedSankeyDataset load(Path path, DoubleConsumer progress) throws LoadException{
+        if (!Files.isRegularFile(path)){
+            throw new LoadException(Reason.NOT_FOUND, path, 0, "This file does not exist!");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            return load(path, channel, channel.size(), progress);
+        }
+        catch (IOException ioe){
+            if (ioe instanceof LoadException){
+                throw (LoadException) ioe;
+            }
+            throw new LoadException(Reason.IO_ERROR, path, 0, ioe.getMessage());
+        }
+    }
+
+    //    Scan a channel that is already open, SankeyDataset.parse has taken its size while choosing the loader
+    static MappedSankeyDataset load(Path path, FileChannel channel, long fileSize, DoubleConsumer progress) throws LoadException{
+        try {
+            LineScanner scanner = new LineScanner(path, fileSize, progress);
+            long position = 0;
+            while (position < fileSize){
+                long length = Math.min(SEGMENT_SIZE, fileSize - position);
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                scanner.segmentStart = position;
+                int consumed = scanner.scan(segment, (int) length, position + length == fileSize);
+                if (consumed == 0){
+                    throw new LoadException(Reason.BAD_ROW, path, scanner.lineNumber + 1,
+                            "A line is longer than " + SEGMENT_SIZE + " bytes");
+                }
+                position += consumed;
+            }
+            report(progress, fileSize, fileSize);
+            return scanner.finish();
+        }
+        catch (IOException ioe){
+            if (ioe instanceof LoadException){
+                throw (LoadException) ioe;
+            }
+            throw new LoadException(Reason.IO_ERROR, path, 0, ioe.getMessage());
+        }
+    }
+
+    //    Parse a decimal number between from and to without building a String
+    //    It takes exactly what Long.parseLong takes, so every loader accepts the same values
+    //    The digits are added up as a negative number, that way Long.MIN_VALUE fits as well
+    static long parseLong(MappedByteBuffer bytes, int from, int to){
+        boolean negative = from < to && bytes.get(from) == '-';
+        int i = from < to && (negative || bytes.get(from) == '+') ? from + 1 : from;
+        if (i == to){
+            throw new NumberFormatException();
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long smallest = limit / 10;
+        long value = 0;
+        for (; i < to; i++){
+            int digit = bytes.get(i) - '0';
+            if (digit < 0 || digit > 9 || value < smallest){
+                throw new NumberFormatException();
+            }
+            value *= 10;
+            if (value < limit + digit){
+                throw new NumberFormatException();
+            }
+            value -= digit;
+        }
+        return negative ? value : -value;
+    }
+
+    //    LineScanner walks the mapped bytes line by line and keeps the rows in primitive arrays
+    static class LineScanner {
+        final Path path;
+        final long fileSize;
+        final DoubleConsumer progress;
+        //segmentStart is where the current segment starts in the file
+        long segmentStart;
+        final List<MappedByteBuffer> segments = new ArrayList<>();
+        String title;
+        String source;
+        int lineNumber = 0;
+        int rows = 0;
+        long[] values = new long[1024];
+        long[] labelPositions = new long[1024];
+        int[] labelLengths = new int[1024];
+
+        LineScanner(Path path, long fileSize, DoubleConsumer progress){
+            this.path = path;
+            this.fileSize = fileSize;
+            this.progress = progress;
+        }
+
+        //    Scan the complete lines of a segment and return how many bytes were used
+        //    The unfinished line at the end is read again at the start of the next segment
+        int scan(MappedByteBuffer segment, int limit, boolean lastSegment) throws LoadException{
+            int segmentIndex = segments.size();
+            segments.add(segment);
+            int lineStart = 0;
+            for (int i = 0; i < limit; i++){
+                if (segment.get(i) == '\n'){
+                    line(segment, segmentIndex, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            if (lastSegment && lineStart < limit){
+                line(segment, segmentIndex, lineStart, limit);
+                lineStart = limit;
+            }
+            return lineStart;
+        }
+
+        void line(MappedByteBuffer segment, int segmentIndex, int start, int end) throws LoadException{
+            lineNumber++;
+            if (lineNumber % PROGRESS_LINES == 0){
+                checkCancelled(path, lineNumber);
+                report(progress, segmentStart + end, fileSize);
+            }
+//            Drop '\r' and trailing blanks, just like stripTrailing in the buffered reader
+            while (end > start && segment.get(end - 1) <= ' '){
+                end--;
+            }
+            if (title == null){
+                title = decode(segment, start, end);
+                return;
+            }
+            if (source == null){
+                source = decode(segment, start, end);
+                return;
+            }
+            if (end == start){
+                return;
+            }
+
+//            Read the value backwards from the end of the line up to the last space
+            int space = end - 1;
+            while (space >= start && segment.get(space) != ' '){
+                space--;
+            }
+            if (space < start){
+                throw new LoadException(Reason.BAD_ROW, path, lineNumber,
+                        "Expected a label and a value but found \"" + decode(segment, start, end) + "\"");
+            }
+            long value;
+            try {
+                value = parseLong(segment, space + 1, end);
+            }
+            catch (NumberFormatException nfe){
+                throw new LoadException(Reason.BAD_VALUE, path, lineNumber,
+                        "\"" + decode(segment, space + 1, end) + "\" is not a number");
+            }
+
+            if (rows == values.length){
+                values = Arrays.copyOf(values, rows * 2);
+                labelPositions = Arrays.copyOf(labelPositions, rows * 2);
+                labelLengths = Arrays.copyOf(labelLengths, rows * 2);
+            }
+            values[rows] = value;
+            labelPositions[rows] = ((long) segmentIndex << 32) | start;
+            labelLengths[rows] = space - start;
+            rows++;
+        }
+
+        String decode(MappedByteBuffer segment, int from, int to){
+            byte[] bytes = new byte[to - from];
+            segment.get(from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        MappedSankeyDataset finish() throws LoadException{
+            if (title == null){
+                throw new LoadException(Reason.MISSING_TITLE, path, 1, "The file is empty");
+            }
+            if (source == null){
+                throw new LoadException(Reason.MISSING_SOURCE, path, 2, "The file has no source label");
+            }
+            if (rows == 0){
+                throw new LoadException(Reason.NO_ROWS, path, lineNumber, "The file has no branches");
+            }
+            return new MappedSankeyDataset(title, source, Arrays.copyOf(values, rows),
+                    segments.toArray(new MappedByteBuffer[0]),
+                    Arrays.copyOf(labelPositions, rows), Arrays.copyOf(labelLengths, rows));
+        }
+    }
+}
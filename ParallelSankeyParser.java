@@ -0,0 +1,469 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleConsumer;
+
+/**
+ ParallelSankeyParser reads big files of 'label value' rows on several threads and adds up repeated labels
+ The rows after the source are cut into chunks that start and end at line breaks, each chunk is mapped on its own
+ Every worker thread takes the next chunk and adds its rows into its own LabelTable, a hash table of label bytes
+ and long sums held in primitive arrays, so no String is made for a row and the threads share nothing
+ At the end the tables are merged and the labels are sorted by the byte offset where each one first appeared,
+ so the branches keep the order of the file, like SankeyColumns.of does for the rows of SankeyDataset
+ The dataset that comes out has one branch per distinct label, its size depends on the labels and not on the rows
+ Errors name the first bad line of the file, its line number is counted only when there is one
+ */
+public class ParallelSankeyParser {
+    //files from this many megabytes on are read here by SankeyDataset.parse, -Dsankey.parse.threshold changes it
+    static final long PARALLEL_THRESHOLD = Long.getLong("sankey.parse.threshold", 16) * 1024 * 1024;
+    static final boolean ENABLED = !"false".equals(System.getProperty("sankey.parse.parallel"));
+    static final int THREADS = Integer.getInteger("sankey.parse.threads", Runtime.getRuntime().availableProcessors());
+    //a chunk is mapped in one piece, so it is kept well below the 2 GB a mapping can hold
+    static final long MAX_CHUNK = 256L * 1024 * 1024;
+    //each thread gets several chunks, so one slow chunk does not keep the others waiting
+    static final int CHUNKS_PER_THREAD = 4;
+    static final long PROGRESS_MILLIS = 100;
+    static final ExecutorService workers = Executors.newFixedThreadPool(THREADS, SankeyExecutors.daemonThreads("sankey-parse"));
+
+    final Path path;
+    final FileChannel channel;
+    final long fileSize;
+    //chunkStarts[i] to chunkStarts[i + 1] is chunk i, every chunk starts after a line break
+    long[] chunkStarts;
+    final AtomicInteger nextChunk = new AtomicInteger();
+    final AtomicLong bytesDone = new AtomicLong();
+    //no worker takes a chunk after the first one that had an error
+    final AtomicInteger lastChunk = new AtomicInteger(Integer.MAX_VALUE);
+    volatile boolean cancelled;
+
+    ParallelSankeyParser(Path path, FileChannel channel, long fileSize){
+        this.path = path;
+        this.channel = channel;
+        this.fileSize = fileSize;
+    }
+
+    public static SankeyDataset load(Path path) throws SankeyDataset.LoadException{
+        return load(path, null);
+    }
+
+    //    Read the file on THREADS workers, progress gets the part of the file read so far and may be null
+    //    The calling thread only waits, reports progress and notices when it is interrupted
+    public static SankeyDataset load(Path path, DoubleConsumer progress) throws SankeyDataset.LoadException{
+        if (!Files.isRegularFile(path)){
+            throw new SankeyDataset.LoadException(SankeyDataset.Reason.NOT_FOUND, path, 0, "This file does not exist!");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            return load(path, channel, channel.size(), progress);
+        }
+        catch (IOException ioe){
+            if (ioe instanceof SankeyDataset.LoadException){
+                throw (SankeyDataset.LoadException) ioe;
+            }
+            throw new SankeyDataset.LoadException(SankeyDataset.Reason.IO_ERROR, path, 0, ioe.getMessage());
+        }
+    }
+
+    //    Read a channel that is already open, SankeyDataset.parse has taken its size while choosing the loader
+    static SankeyDataset load(Path path, FileChannel channel, long fileSize, DoubleConsumer progress) throws SankeyDataset.LoadException{
+        try {
+            return new ParallelSankeyParser(path, channel, fileSize).run(progress);
+        }
+        catch (IOException ioe){
+            if (ioe instanceof SankeyDataset.LoadException){
+                throw (SankeyDataset.LoadException) ioe;
+            }
+            throw new SankeyDataset.LoadException(SankeyDataset.Reason.IO_ERROR, path, 0, ioe.getMessage());
+        }
+    }
+
+    SankeyDataset run(DoubleConsumer progress) throws IOException{
+//        The title and the source are the first two lines, everything after them is rows
+        String[] header = new String[2];
+        long at = 0;
+        for (int i = 0; i < 2; i++){
+            long end = lineEnd(at);
+            if (end == at && end == fileSize){
+                throw i == 0
+                        ? new SankeyDataset.LoadException(SankeyDataset.Reason.MISSING_TITLE, path, 1, "The file is empty")
+                        : new SankeyDataset.LoadException(SankeyDataset.Reason.MISSING_SOURCE, path, 2, "The file has no source label");
+            }
+            header[i] = readText(at, end).stripTrailing();
+            at = Math.min(fileSize, end + 1);
+        }
+        splitChunks(at);
+
+        int threads = Math.max(1, Math.min(THREADS, chunkStarts.length - 1));
+        List<Future<Worker>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++){
+            futures.add(workers.submit(new Worker()::run));
+        }
+        List<Worker> done = new ArrayList<>();
+        try {
+            for (Future<Worker> future : futures){
+                while (true){
+                    try {
+                        done.add(future.get(PROGRESS_MILLIS, TimeUnit.MILLISECONDS));
+                        break;
+                    }
+                    catch (TimeoutException te){
+                        if (Thread.currentThread().isInterrupted()){
+                            throw new InterruptedException();
+                        }
+                        SankeyDataset.report(progress, bytesDone.get(), fileSize);
+                    }
+                }
+            }
+        }
+        catch (InterruptedException ie){
+            cancelled = true;
+            Thread.currentThread().interrupt();
+            throw new SankeyDataset.LoadException(SankeyDataset.Reason.CANCELLED, path, 0, "Loading was cancelled");
+        }
+        catch (ExecutionException ee){
+            cancelled = true;
+            Throwable cause = ee.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+
+        Worker failed = null;
+        for (Worker worker : done){
+            if (worker.errorOffset >= 0 && (failed == null || worker.errorOffset < failed.errorOffset)){
+                failed = worker;
+            }
+        }
+        if (failed != null){
+            throw new SankeyDataset.LoadException(failed.errorReason, path, lineNumberAt(failed.errorOffset), failed.errorMessage);
+        }
+
+        LabelTable merged = done.get(0).table;
+        for (int i = 1; i < done.size(); i++){
+            merged.addAll(done.get(i).table);
+        }
+        if (merged.size == 0){
+            throw new SankeyDataset.LoadException(SankeyDataset.Reason.NO_ROWS, path, lineNumberAt(fileSize), "The file has no branches");
+        }
+        SankeyDataset.report(progress, fileSize, fileSize);
+        int[] order = merged.firstSeenOrder();
+        String[] labels = new String[order.length];
+        long[] values = new long[order.length];
+        for (int i = 0; i < order.length; i++){
+            labels[i] = merged.label(order[i]);
+            values[i] = merged.sums[order[i]];
+        }
+        return new SankeyDataset(header[0], header[1], labels, values);
+    }
+
+    //    Cut the rows into about CHUNKS_PER_THREAD chunks for every thread, each one ends at a line break
+    void splitChunks(long start) throws IOException{
+        long rows = fileSize - start;
+        long chunks = Math.max((long) THREADS * CHUNKS_PER_THREAD, (rows + MAX_CHUNK - 1) / MAX_CHUNK);
+        long length = Math.max(1, rows / chunks);
+        List<Long> starts = new ArrayList<>();
+        starts.add(start);
+        long at = start;
+        while (true){
+            long guess = at + length;
+            if (guess >= fileSize){
+                break;
+            }
+            long end = lineEnd(guess);
+            if (end >= fileSize){
+                break;
+            }
+            at = end + 1;
+            starts.add(at);
+        }
+        starts.add(fileSize);
+        chunkStarts = new long[starts.size()];
+        for (int i = 0; i < chunkStarts.length; i++){
+            chunkStarts[i] = starts.get(i);
+            if (i > 0 && chunkStarts[i] - chunkStarts[i - 1] > Integer.MAX_VALUE){
+                throw new SankeyDataset.LoadException(SankeyDataset.Reason.BAD_ROW, path, lineNumberAt(chunkStarts[i - 1]),
+                        "A line is longer than " + Integer.MAX_VALUE + " bytes");
+            }
+        }
+    }
+
+    //    The position of the first line break from a position on, or the size of the file when there is none
+    long lineEnd(long from) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = from;
+        while (position < fileSize){
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0){
+                break;
+            }
+            for (int i = 0; i < read; i++){
+                if (buffer.get(i) == '\n'){
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+        return fileSize;
+    }
+
+    String readText(long from, long to) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        while (buffer.hasRemaining() && channel.read(buffer, from + buffer.position()) > 0){
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    //    The line number of a position, only needed for errors so the lines are counted then
+    int lineNumberAt(long offset) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long lines = 1;
+        long position = 0;
+        while (position < offset){
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), offset - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0){
+                break;
+            }
+            for (int i = 0; i < read; i++){
+                if (buffer.get(i) == '\n'){
+                    lines++;
+                }
+            }
+            position += read;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, lines);
+    }
+
+    //    A worker takes chunks until there are none left and keeps its own table
+    //    A bad row stops the worker, the offset of its line is kept for the message
+    final class Worker {
+        final LabelTable table = new LabelTable(1024);
+        byte[] scratch = new byte[256];
+        long errorOffset = -1;
+        SankeyDataset.Reason errorReason;
+        String errorMessage;
+
+        Worker run() throws IOException{
+            while (!cancelled){
+                int chunk = nextChunk.getAndIncrement();
+                if (chunk >= chunkStarts.length - 1 || chunk > lastChunk.get()){
+                    break;
+                }
+                long start = chunkStarts[chunk];
+                int length = (int) (chunkStarts[chunk + 1] - start);
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                if (!scan(bytes, start, length)){
+                    lastChunk.accumulateAndGet(chunk, Math::min);
+                    break;
+                }
+            }
+            return this;
+        }
+
+        //    Add every row of a chunk to the table, false at the first bad row
+        boolean scan(MappedByteBuffer bytes, long chunkStart, int length){
+            int lineStart = 0;
+            int reported = 0;
+            int lines = 0;
+            for (int i = 0; i <= length; i++){
+                if (i < length && bytes.get(i) != '\n'){
+                    continue;
+                }
+                if (i > lineStart && !row(bytes, chunkStart, lineStart, i)){
+                    return false;
+                }
+                lineStart = i + 1;
+                if (++lines % SankeyDataset.PROGRESS_LINES == 0){
+                    if (cancelled){
+                        return true;
+                    }
+                    bytesDone.addAndGet(i - reported);
+                    reported = i;
+                }
+            }
+            bytesDone.addAndGet(length - reported);
+            return true;
+        }
+
+        boolean row(MappedByteBuffer bytes, long chunkStart, int start, int end){
+//            Drop '\r' and trailing blanks, just like stripTrailing in the buffered reader
+            while (end > start && bytes.get(end - 1) <= ' '){
+                end--;
+            }
+            if (end == start){
+                return true;
+            }
+            int space = end - 1;
+            while (space >= start && bytes.get(space) != ' '){
+                space--;
+            }
+            if (space < start){
+                return fail(chunkStart + start, SankeyDataset.Reason.BAD_ROW,
+                        "Expected a label and a value but found \"" + decode(bytes, start, end) + "\"");
+            }
+            long value;
+            try {
+                value = MappedSankeyDataset.parseLong(bytes, space + 1, end);
+            }
+            catch (NumberFormatException nfe){
+                return fail(chunkStart + start, SankeyDataset.Reason.BAD_VALUE,
+                        "\"" + decode(bytes, space + 1, end) + "\" is not a number");
+            }
+            int labelLength = space - start;
+            if (labelLength > scratch.length){
+                scratch = new byte[Math.max(labelLength, scratch.length * 2)];
+            }
+            bytes.get(start, scratch, 0, labelLength);
+            table.add(scratch, 0, labelLength, value, chunkStart + start);
+            return true;
+        }
+
+        boolean fail(long offset, SankeyDataset.Reason reason, String message){
+            errorOffset = offset;
+            errorReason = reason;
+            errorMessage = message;
+            return false;
+        }
+    }
+
+    static String decode(MappedByteBuffer bytes, int from, int to){
+        byte[] text = new byte[to - from];
+        bytes.get(from, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    //    LabelTable maps label bytes to a long sum with open addressing, all of it in primitive arrays
+    //    The bytes of the labels are kept one after another in one array, first is the offset in the file
+    //    where a label was first seen
+    static final class LabelTable {
+        //slots[h] is the id + 1 of the label in that slot, 0 when it is empty
+        int[] slots;
+        int[] hashes;
+        int[] starts;
+        int[] lengths;
+        long[] sums;
+        long[] firsts;
+        byte[] bytes = new byte[1 << 12];
+        int used;
+        int size;
+
+        LabelTable(int capacity){
+            slots = new int[capacity * 2];
+            hashes = new int[capacity];
+            starts = new int[capacity];
+            lengths = new int[capacity];
+            sums = new long[capacity];
+            firsts = new long[capacity];
+        }
+
+        void add(byte[] label, int from, int length, long value, long first){
+            int hash = hash(label, from, length);
+            int mask = slots.length - 1;
+            int slot = hash & mask;
+            while (slots[slot] != 0){
+                int id = slots[slot] - 1;
+                if (hashes[id] == hash && Arrays.equals(bytes, starts[id], starts[id] + lengths[id], label, from, from + length)){
+                    sums[id] += value;
+                    firsts[id] = Math.min(firsts[id], first);
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size == hashes.length){
+                grow();
+                add(label, from, length, value, first);
+                return;
+            }
+            if (used + length > bytes.length){
+                bytes = Arrays.copyOf(bytes, Math.max(used + length, bytes.length * 2));
+            }
+            System.arraycopy(label, from, bytes, used, length);
+            hashes[size] = hash;
+            starts[size] = used;
+            lengths[size] = length;
+            sums[size] = value;
+            firsts[size] = first;
+            used += length;
+            size++;
+            slots[slot] = size;
+        }
+
+        //    Add the labels of another table, sums are added and the earliest first is kept
+        void addAll(LabelTable other){
+            for (int id = 0; id < other.size; id++){
+                add(other.bytes, other.starts[id], other.lengths[id], other.sums[id], other.firsts[id]);
+            }
+        }
+
+        void grow(){
+            int capacity = hashes.length * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            firsts = Arrays.copyOf(firsts, capacity);
+            slots = new int[capacity * 2];
+            int mask = slots.length - 1;
+            for (int id = 0; id < size; id++){
+                int slot = hashes[id] & mask;
+                while (slots[slot] != 0){
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = id + 1;
+            }
+        }
+
+        static int hash(byte[] label, int from, int length){
+            int hash = 0x811C9DC5;
+            for (int i = from; i < from + length; i++){
+                hash = (hash ^ label[i]) * 0x01000193;
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        String label(int id){
+            return new String(bytes, starts[id], lengths[id], StandardCharsets.UTF_8);
+        }
+
+        //    The ids sorted by where their label was first seen in the file
+        int[] firstSeenOrder(){
+            int[] ids = new int[size];
+            for (int i = 0; i < size; i++){
+                ids[i] = i;
+            }
+            int[] spare = new int[size];
+            sort(ids, spare, 0, size);
+            return ids;
+        }
+
+        //    A merge sort of ids by firsts, there is no primitive sort with a comparator
+        void sort(int[] ids, int[] spare, int from, int to){
+            if (to - from < 2){
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            sort(ids, spare, from, middle);
+            sort(ids, spare, middle, to);
+            if (firsts[ids[middle - 1]] <= firsts[ids[middle]]){
+                return;
+            }
+            System.arraycopy(ids, from, spare, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++){
+                if (right >= to || (left < middle && firsts[spare[left]] <= firsts[spare[right]])){
+                    ids[i] = spare[left++];
+                }
+                else {
+                    ids[i] = spare[right++];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ SankeyBenchmarks measures the parts of the program that decide how fast a diagram opens
+ parse: reading files of 1K and 100K rows, and 10M rows with --large, in every way SankeyDataset can read them
+ layout: SankeyLayout from a map and from SankeyColumns, and with SankeyDetail, for 10 to 10K branches,
+ and SankeyGraphLayout with and without threads
+ scene: creating the nodes of SankeyPane in paint, skipped when JavaFX can not start
+ autocomplete: FileNameIndex queries against 10K names, next to the scan it replaced
+ Like SankeyParseBenchmark it follows the JMH pattern of warmup rounds, measured rounds and a consumed result,
+ and prints the time and the bytes allocated per operation by all threads, the worker pools included
+ The inputs come from SankeyDataGenerator with fixed seeds, so the numbers can be compared between machines
+ Usage: java SankeyBenchmarks [--large] [--warmup n] [--rounds n] [parse] [layout] [scene] [autocomplete]
+ The parse and layout groups also run under JMH with forks, from jmh/ with mvn -Pjmh package, see pom.xml
+ */
+public class SankeyBenchmarks {
+    //sink keeps the results alive so the JIT can not remove the work
+    static long sink;
+
+    int warmup = 5;
+    int rounds = 10;
+    boolean large;
+
+    //    One measured operation, the result goes into sink
+    interface Operation {
+        long run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception{
+        SankeyBenchmarks benchmarks = new SankeyBenchmarks();
+        Set<String> groups = new LinkedHashSet<>();
+        for (int i = 0; i < args.length; i++){
+            switch (args[i]){
+                case "--large": benchmarks.large = true; break;
+                case "--warmup": benchmarks.warmup = Integer.parseInt(args[++i]); break;
+                case "--rounds": benchmarks.rounds = Integer.parseInt(args[++i]); break;
+                default: groups.add(args[i]);
+            }
+        }
+        if (groups.isEmpty()){
+            groups.addAll(List.of("parse", "layout", "scene", "autocomplete"));
+        }
+        for (String group : groups){
+            System.out.println("== " + group);
+            switch (group){
+                case "parse": benchmarks.parse(); break;
+                case "layout": benchmarks.layout(); break;
+                case "scene": benchmarks.scene(); break;
+                case "autocomplete": benchmarks.autocomplete(); break;
+                default: System.out.println("Unknown group " + group);
+            }
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    void parse() throws Exception{
+        List<Integer> sizes = new ArrayList<>(List.of(1_000, 100_000));
+        if (large){
+            sizes.add(10_000_000);
+        }
+        for (int rows : sizes){
+            Path file = Files.createTempFile("sankey-benchmark", ".txt");
+            try {
+                SankeyDataGenerator.writeRows(file, rows, SankeyDataGenerator.SEED);
+//                The old Scanner path reads the file three times, it is left out for the biggest file
+                int times = rows > 1_000_000 ? 1 : rounds;
+                int warm = rows > 1_000_000 ? 1 : warmup;
+                if (rows <= 100_000){
+                    measure("parse " + rows + " SCANNER", warm, times, () -> SankeyParseBenchmark.load("SCANNER", file));
+                }
+                measure("parse " + rows + " BUFFERED", warm, times, () -> SankeyParseBenchmark.load("BUFFERED", file));
+                measure("parse " + rows + " MAPPED", warm, times, () -> SankeyParseBenchmark.load("MAPPED", file));
+                measure("parse " + rows + " PARALLEL", warm, times, () -> SankeyParseBenchmark.load("PARALLEL", file));
+            }
+            finally {
+                Files.deleteIfExists(file);
+            }
+        }
+//        Raw exports repeat their labels, the rows have to be added up before they can be drawn
+        int repeated = large ? 10_000_000 : 1_000_000;
+        Path file = Files.createTempFile("sankey-benchmark", ".txt");
+        try {
+            SankeyDataGenerator.writeRepeatedRows(file, repeated, 1_000, SankeyDataGenerator.SEED);
+            measure("aggregate " + repeated + " BUFFERED", warmup, rounds,
+                    () -> (long) SankeyColumns.of(SankeyDataset.loadBuffered(file)).size());
+            measure("aggregate " + repeated + " PARALLEL", warmup, rounds,
+                    () -> (long) SankeyColumns.of(ParallelSankeyParser.load(file)).size());
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    void layout() throws Exception{
+        for (int branches : new int[]{10, 100, 1_000, 10_000}){
+            Map<String, Integer> map = new HashMap<>();
+            String[] array = branches(branches, map);
+            SankeyColumns columns = SankeyColumns.of(map, array);
+            measure("layout map " + branches + " branches", warmup, rounds,
+                    () -> SankeyLayout.compute(map, array, 600, 500).nodes.size());
+            measure("layout " + branches + " branches", warmup, rounds,
+                    () -> SankeyLayout.compute(columns, 600, 500).nodes.size());
+            measure("detail+layout " + branches + " branches", warmup, rounds, () -> {
+                SankeyDetail detail = SankeyDetail.of(columns, 500, SankeyDetail.MIN_PIXELS);
+                return SankeyLayout.compute(detail.columns, 600, 500).nodes.size();
+            });
+        }
+
+        boolean parallel = SankeyGraphLayout.isParallel();
+        for (int[] shape : new int[][]{{4, 25, 1_000}, {6, 400, 20_000}}){
+            Path file = Files.createTempFile("sankey-benchmark", ".txt");
+            try {
+                SankeyDataGenerator.writeGraph(file, shape[0], shape[1], shape[2], SankeyDataGenerator.SEED);
+                SankeyGraph graph = SankeyDataset.load(file).getGraph();
+                for (boolean threads : new boolean[]{false, true}){
+                    SankeyGraphLayout.setParallel(threads);
+                    measure("graph " + graph.nodeCount() + " nodes " + graph.edgeCount() + " flows"
+                                    + (threads ? " parallel" : " single"), warmup, rounds,
+                            () -> SankeyGraphLayout.compute(graph, 1200, 900).bands.size());
+                }
+            }
+            finally {
+                Files.deleteIfExists(file);
+            }
+        }
+        SankeyGraphLayout.setParallel(parallel);
+    }
+
+    void scene() throws Exception{
+        try {
+            SankeyPngExport.startFx();
+        }
+        catch (RuntimeException re){
+            System.out.println("skipped, JavaFX can not start: " + re.getMessage());
+            return;
+        }
+        for (int branches : new int[]{10, 100, 1_000}){
+            Map<String, Integer> map = new HashMap<>();
+            String[] array = branches(branches, map);
+            for (SankeyPane.Renderer renderer : new SankeyPane.Renderer[]{SankeyPane.Renderer.NODES, SankeyPane.Renderer.CANVAS}){
+                SankeyPane pane = new SankeyPane(map, array);
+                pane.setLevelOfDetail(false);
+                pane.setRenderer(renderer);
+                pane.resize(600, 500);
+                measure("paint " + branches + " branches " + renderer.name().toLowerCase(), warmup, rounds, () -> onFxThread(() -> {
+                    pane.paint();
+                    return pane.getChildren().size();
+                }));
+            }
+        }
+    }
+
+    void autocomplete() throws Exception{
+        List<String> names = SankeyDataGenerator.fileNames(10_000, SankeyDataGenerator.SEED);
+        FileNameIndex index = new FileNameIndex(names);
+        String[] typed = {"a", "an", "ann", "annu", "annual_s", "sales_n", "zq", "report_west_1"};
+        measure("index 10000 names", warmup, rounds, () -> {
+            long found = 0;
+            for (String text : typed){
+                found += index.query(text, SankeyDiagrams.TIP_LIMIT).getTotal();
+            }
+            return found;
+        });
+//        Every name checked for every typed character, as the listener did before FileNameIndex
+        measure("scan 10000 names", warmup, rounds, () -> {
+            long found = 0;
+            for (String text : typed){
+                for (String name : names){
+                    boolean all = true;
+                    for (int i = 0; i < text.length() && all; i++){
+                        all = name.indexOf(text.charAt(i)) >= 0;
+                    }
+                    if (all){
+                        found++;
+                    }
+                }
+            }
+            return found;
+        });
+    }
+
+    //    A source and branches with values from 1 to 1000, with a few big ones like real files
+    static String[] branches(int count, Map<String, Integer> map){
+        Random random = new Random(SankeyDataGenerator.SEED);
+        String[] array = new String[count + 1];
+        array[0] = "Total";
+        int total = 0;
+        for (int i = 1; i <= count; i++){
+            array[i] = "Branch " + i;
+            int value = i <= 5 ? 10_000 + random.nextInt(10_000) : 1 + random.nextInt(1000);
+            map.put(array[i], value);
+            total += value;
+        }
+        map.put(array[0], total);
+        return array;
+    }
+
+    static long onFxThread(Callable<Integer> work) throws Exception{
+        FutureTask<Integer> task = new FutureTask<>(work);
+        javafx.application.Platform.runLater(task);
+        return task.get();
+    }
+
+    static void measure(String name, int warmup, int rounds, Operation operation) throws Exception{
+        for (int i = 0; i < warmup; i++){
+            sink += operation.run();
+        }
+        long bytesBefore = SankeyParseBenchmark.allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++){
+            sink += operation.run();
+        }
+        long time = System.nanoTime() - start;
+        long bytes = SankeyParseBenchmark.allocatedBytes() - bytesBefore;
+        System.out.printf("%-44s %10.3f ms/op %12d KB allocated/op%n", name, time / 1e6 / rounds, bytes / 1024 / rounds);
+    }
+}
@@ -0,0 +1,86 @@
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextAlignment;
+
+/**
+ SankeyCanvas draws a SankeyLayout onto one Canvas with the same shapes and colors as the nodes of SankeyPane
+ There is one node in the scene whatever the size of the data, so there is no CSS or layout pass per shape
+ It only fills and strokes plain paths, without effects, so it draws the same with -Dprism.order=sw
+ Hover and click are answered by a SankeyHitIndex, which is built the first time a point is asked for
+ after a draw, so a running move does not build one on every frame
+ */
+public class SankeyCanvas extends Canvas {
+    final Font font;
+    SankeyLayout layout;
+    SankeyHitIndex hitIndex;
+    //measures the widths of the texts for the hit index
+    final Text measure = new Text();
+
+    public SankeyCanvas(Font font){
+        this.font = font;
+        measure.setFont(font);
+    }
+
+    //    Draw the layout, fullIndex turns a series into the index of its colors
+    public void draw(SankeyLayout layout, int[] fullIndex, Color[] nodeFills, Color[] bandFills){
+        this.layout = layout;
+        hitIndex = null;
+        setWidth(layout.width);
+        setHeight(layout.height);
+        GraphicsContext gc = getGraphicsContext2D();
+        gc.clearRect(0, 0, getWidth(), getHeight());
+
+//        The same order as the nodes: rectangles, black lines, branches and then the texts
+        gc.setLineWidth(1);
+        for (SankeyLayout.Node node : layout.nodes){
+            Color color = nodeFills[fullIndex[node.series]];
+            gc.setFill(color);
+            gc.setStroke(color);
+            gc.fillRect(node.x, node.y, node.width, node.height);
+            gc.strokeRect(node.x, node.y, node.width, node.height);
+        }
+        gc.setStroke(Color.BLACK);
+        for (SankeyLayout.Divider divider : layout.dividers){
+            gc.strokeLine(divider.startX, divider.startY, divider.endX, divider.endY);
+        }
+        for (SankeyLayout.Band band : layout.bands){
+            double bottom0 = band.y0 + band.thickness;
+            double bottom1 = band.y1 + band.thickness;
+            gc.setFill(bandFills[fullIndex[band.series]]);
+            gc.beginPath();
+            gc.moveTo(band.x0, band.y0);
+            gc.bezierCurveTo(band.controlX0(), band.y0, band.controlX1(), band.y1, band.x1, band.y1);
+            gc.lineTo(band.x1, bottom1);
+            gc.bezierCurveTo(band.controlX1(), bottom1, band.controlX0(), bottom0, band.x0, bottom0);
+            gc.closePath();
+            gc.fill();
+        }
+        gc.setFill(Color.BLACK);
+        gc.setFont(font);
+        gc.setTextBaseline(VPos.CENTER);
+        for (SankeyLayout.Label label : layout.labels){
+            gc.setTextAlign(label.startsAtX ? TextAlignment.LEFT : TextAlignment.RIGHT);
+            gc.fillText(label.text, label.x, label.y);
+        }
+    }
+
+    //    The series under a point of the canvas, or -1
+    public int seriesAt(double x, double y){
+        if (layout == null){
+            return -1;
+        }
+        if (hitIndex == null){
+            double[] widths = new double[layout.labels.size()];
+            for (int i = 0; i < widths.length; i++){
+                measure.setText(layout.labels.get(i).text);
+                widths[i] = measure.getLayoutBounds().getWidth();
+            }
+            hitIndex = new SankeyHitIndex(layout, widths, measure.getLayoutBounds().getHeight());
+        }
+        return hitIndex.seriesAt(x, y);
+    }
+}
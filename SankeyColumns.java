@@ -0,0 +1,143 @@
+import java.util.*;
+
+/**
+ SankeyColumns is the data of a single level diagram as two columns indexed by int
+ labels[0] is the source and labels[i] is branch i, values[i] is its value and values[0] the total
+ Values are long, so totals beyond Integer.MAX_VALUE are drawn correctly
+ prefix[i] is the sum of the branches before branch i, so the sum of any run of branches needs no loop
+ SankeyLayout and SankeyPane read the columns straight away, there is no map lookup or boxing when drawing
+ A SankeyColumns never changes after it is made, the layout cache recognises it by identity
+ */
+public final class SankeyColumns {
+    final String[] labels;
+    final long[] values;
+    //prefix[i] = values[1] + ... + values[i - 1], prefix[size()] is the sum of all branches
+    final long[] prefix;
+    //the values of the branches from small to large, and the labels that look like a merged branch,
+    //both made the first time SankeyDetail needs them
+    long[] sortedValues;
+    Set<String> otherLabels;
+    //the last SankeyDetail with merged branches, the same one is given out again so its layouts stay cached
+    SankeyDetail lastDetail;
+
+    SankeyColumns(String[] labels, long[] values){
+        this.labels = labels;
+        this.values = values;
+        this.prefix = new long[values.length + 1];
+        for (int i = 1; i < values.length; i++){
+            prefix[i + 1] = prefix[i] + values[i];
+        }
+    }
+
+    //    The columns of a dataset, a label that appears twice is one branch with both values added together
+    //    at the place it first appears, so no value is lost and the branches add up to the source
+    public static SankeyColumns of(SankeyDataset dataset){
+        int rows = dataset.size();
+        Map<String, Integer> index = new HashMap<>(Math.max(16, rows * 2));
+        String[] labels = new String[rows + 1];
+        long[] values = new long[rows + 1];
+        labels[0] = dataset.getSource();
+        int size = 1;
+        long total = 0;
+        for (int i = 0; i < rows; i++){
+            String label = dataset.getLabel(i);
+            long value = dataset.getValue(i);
+            total += value;
+            Integer at = index.putIfAbsent(label, size);
+            if (at == null){
+                labels[size] = label;
+                values[size] = value;
+                size++;
+            }
+            else {
+                values[at] += value;
+            }
+        }
+        values[0] = total;
+        if (size < labels.length){
+            labels = Arrays.copyOf(labels, size);
+            values = Arrays.copyOf(values, size);
+        }
+        return new SankeyColumns(labels, values);
+    }
+
+    //    The columns of the old map and order, array[0] is the source
+    public static SankeyColumns of(Map<String, Integer> map, String[] array){
+        long[] values = new long[array.length];
+        for (int i = 0; i < array.length; i++){
+            values[i] = map.get(array[i]);
+        }
+        return new SankeyColumns(array.clone(), values);
+    }
+
+    //    How many labels there are, the source included
+    public int size(){
+        return labels.length;
+    }
+
+    public String getLabel(int index){
+        return labels[index];
+    }
+
+    public long getValue(int index){
+        return values[index];
+    }
+
+    public long getTotal(){
+        return values[0];
+    }
+
+    //    The sum of the branches from -> to - 1
+    public long sum(int from, int to){
+        return prefix[to] - prefix[from];
+    }
+
+    //    The first branch where the running sum of the branches reaches half of the total, 0 when it never does
+    //    Values are not negative so the running sums only grow, and it is a binary search over prefix
+    public int middleBranch(){
+        long half = getTotal() / 2;
+        int low = 1;
+        int high = labels.length - 1;
+        int found = 0;
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            if (prefix[mid + 1] >= half){
+                found = mid;
+                high = mid - 1;
+            }
+            else {
+                low = mid + 1;
+            }
+        }
+        return found;
+    }
+
+    //    The values of the branches sorted once, SankeyDetail counts the thin ones with a binary search
+    synchronized long[] sortedValues(){
+        if (sortedValues == null){
+            long[] sorted = Arrays.copyOfRange(values, 1, values.length);
+            Arrays.sort(sorted);
+            sortedValues = sorted;
+        }
+        return sortedValues;
+    }
+
+    //    The labels starting with 'Other (', a merged branch must not get one of these names
+    synchronized Set<String> otherLabels(){
+        if (otherLabels == null){
+            Set<String> found = new HashSet<>();
+            for (String label : labels){
+                if (label.startsWith(SankeyDetail.OTHER)){
+                    found.add(label);
+                }
+            }
+            otherLabels = found;
+        }
+        return otherLabels;
+    }
+
+    //    Whether two columns have the same labels in the same order, the values may differ
+    public boolean sameLabels(SankeyColumns other){
+        return other != null && Arrays.equals(labels, other.labels);
+    }
+}
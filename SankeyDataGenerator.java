@@ -0,0 +1,102 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ SankeyDataGenerator writes synthetic input files, the same seed always gives the same file
+ rows: one source and many branches, the format of the example files
+ repeated: rows whose labels come back many times, like a raw export that still has to be added up
+ graph: flows between several levels, the format read by SankeyGraph
+ names: file names for the autocomplete of the launcher, one per line
+ Usage: java SankeyDataGenerator rows COUNT FILE [seed]
+        java SankeyDataGenerator repeated COUNT DISTINCT FILE [seed]
+        java SankeyDataGenerator graph LEVELS NODES_PER_LEVEL FLOWS FILE [seed]
+        java SankeyDataGenerator names COUNT FILE [seed]
+ */
+public class SankeyDataGenerator {
+    static final long SEED = 42;
+    static final String[] WORDS = {"sales", "budget", "energy", "report", "traffic", "water", "export", "import",
+            "students", "survey", "income", "costs", "region", "north", "south", "east", "west", "weekly", "annual", "final"};
+
+    private SankeyDataGenerator(){
+    }
+
+    public static void main(String[] args) throws IOException{
+        if (args.length < 3){
+            System.err.println("Usage: java SankeyDataGenerator rows|repeated|graph|names ...");
+            System.exit(2);
+        }
+        switch (args[0]){
+            case "rows":
+                writeRows(Paths.get(args[2]), Integer.parseInt(args[1]), seed(args, 3));
+                break;
+            case "repeated":
+                writeRepeatedRows(Paths.get(args[3]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), seed(args, 4));
+                break;
+            case "graph":
+                writeGraph(Paths.get(args[4]), Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                        Integer.parseInt(args[3]), seed(args, 5));
+                break;
+            case "names":
+                Files.write(Paths.get(args[2]), fileNames(Integer.parseInt(args[1]), seed(args, 3)), StandardCharsets.UTF_8);
+                break;
+            default:
+                System.err.println("Unknown kind " + args[0]);
+                System.exit(2);
+        }
+    }
+
+    static long seed(String[] args, int i){
+        return args.length > i ? Long.parseLong(args[i]) : SEED;
+    }
+
+    //    A file with one source and rows branches with unique labels made of two words
+    public static void writeRows(Path file, int rows, long seed) throws IOException{
+        Random random = new Random(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            writer.write("Benchmark with " + rows + " rows\n");
+            writer.write("Total\n");
+            for (int i = 0; i < rows; i++){
+                writer.write("Branch " + i + " " + (1 + random.nextInt(10_000)) + "\n");
+            }
+        }
+    }
+
+    //    A file of rows lines that share only distinct labels, so every label is on many lines
+    public static void writeRepeatedRows(Path file, int rows, int distinct, long seed) throws IOException{
+        Random random = new Random(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            writer.write("Benchmark with " + rows + " rows of " + distinct + " labels\n");
+            writer.write("Total\n");
+            for (int i = 0; i < rows; i++){
+                writer.write("Branch " + random.nextInt(distinct) + " " + (1 + random.nextInt(10_000)) + "\n");
+            }
+        }
+    }
+
+    //    A file of flows, every flow goes from a node of one level to a node of a later level
+    public static void writeGraph(Path file, int levels, int nodesPerLevel, int flows, long seed) throws IOException{
+        Random random = new Random(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            writer.write("Graph with " + levels + " levels and " + flows + " flows\n");
+            for (int i = 0; i < flows; i++){
+                int level = random.nextInt(levels - 1);
+                int next = level + 1 + (random.nextInt(4) == 0 ? random.nextInt(levels - level - 1) : 0);
+                writer.write("Node " + level + "." + random.nextInt(nodesPerLevel) + " -> Node " + next + "."
+                        + random.nextInt(nodesPerLevel) + " " + (1 + random.nextInt(1000)) + "\n");
+            }
+        }
+    }
+
+    //    Unique file names like 'annual_sales_north_17'
+    public static List<String> fileNames(int count, long seed){
+        Random random = new Random(seed);
+        Set<String> names = new LinkedHashSet<>();
+        while (names.size() < count){
+            names.add(WORDS[random.nextInt(WORDS.length)] + "_" + WORDS[random.nextInt(WORDS.length)] + "_"
+                    + WORDS[random.nextInt(WORDS.length)] + "_" + random.nextInt(100));
+        }
+        return new ArrayList<>(names);
+    }
+}
@@ -0,0 +1,357 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.DoubleConsumer;
+
+/**
+ SankeyDataset holds everything a Sankey diagram needs from one input file
+ The first line of the file is the title, the second line is the source label
+ Every following line is a branch label followed by a space and its value
+ The file is read once through a buffered reader and closed straight away
+ Problems with the file are reported as a LoadException instead of exiting
+ */
+public class SankeyDataset {
+    //size of the read buffer, the only allocation that does not depend on the number of rows
+    static final int BUFFER_SIZE = 64 * 1024;
+    //the first guess of how many rows the file has is capped, the arrays grow when needed
+    static final int MAX_INITIAL_ROWS = 1 << 16;
+    //progress is reported and cancellation is checked every PROGRESS_LINES lines
+    static final int PROGRESS_LINES = 8192;
+    //how much of a big file is read to find its second line
+    static final int HEAD_BYTES = 64 * 1024;
+
+    //title is the first line of the file
+    final String title;
+    //source is the second line of the file, the label of the left rectangle
+    final String source;
+    //labels and values record the branches in the same order as the file
+    //values are long, a file read by ParallelSankeyParser has one branch per label with the sum of its rows
+    final String[] labels;
+    final long[] values;
+    //total is the sum of all values, it is the value of the source
+    final long total;
+    //graph is only set for files of flows with many levels, labels and values are empty then
+    final SankeyGraph graph;
+    //columns is made by getColumns the first time, every window showing this dataset shares it
+    SankeyColumns columns;
+
+    SankeyDataset(String title, String source, String[] labels, long[] values){
+        this.title = title;
+        this.source = source;
+        this.labels = labels;
+        this.values = values;
+        long sum = 0;
+        for (long value : values){
+            sum += value;
+        }
+        this.total = sum;
+        this.graph = null;
+    }
+
+    //    A dataset for a file of flows, see SankeyGraph
+    SankeyDataset(String title, SankeyGraph graph){
+        this.title = title;
+        this.source = "";
+        this.labels = new String[0];
+        this.values = new long[0];
+        this.total = 0;
+        this.graph = graph;
+    }
+
+    //    The graph of a file of flows, null for a file with one source
+    public SankeyGraph getGraph(){
+        return graph;
+    }
+
+    public String getTitle(){
+        return title;
+    }
+
+    public String getSource(){
+        return source;
+    }
+
+    public long getTotal(){
+        return total;
+    }
+
+    //    How many branches the dataset has, the source is not counted
+    public int size(){
+        return values.length;
+    }
+
+    public String getLabel(int index){
+        return labels[index];
+    }
+
+    public long getValue(int index){
+        return values[index];
+    }
+
+    //    The columns of the diagram, a graph is kept as its node names and values
+    //    The dataset never changes, so they are made once and windows that share the dataset share its layouts
+    public synchronized SankeyColumns getColumns(){
+        if (columns == null){
+            columns = graph != null ? new SankeyColumns(graph.names.clone(), graph.nodeValues()) : SankeyColumns.of(this);
+        }
+        return columns;
+    }
+
+    //    About how many bytes of heap the dataset holds, for the budget of SankeyDatasetPool
+    //    A String is counted as 48 bytes and one byte per character
+    public long estimateBytes(){
+        if (graph != null){
+            return graph.estimateBytes();
+        }
+        long estimate = 64 + 16L * values.length;
+        for (String label : labels){
+            estimate += 48 + label.length();
+        }
+        return estimate;
+    }
+
+    //    Load a dataset by the name typed in the launcher, '.txt' is added here
+    public static SankeyDataset load(String fileName) throws LoadException{
+        return load(Paths.get(fileName + ".txt"));
+    }
+
+    public static SankeyDataset load(Path path) throws LoadException{
+        return load(path, null);
+    }
+
+    //    A file read before comes from SankeyDatasetCache when it has not changed since
+    //    Files from PARALLEL_THRESHOLD bytes on are read by ParallelSankeyParser, which adds up repeated labels
+    //    progress gets the part of the file read so far, from 0 to 1, it may be null
+    //    An interrupted thread stops loading with a CANCELLED LoadException
+    public static SankeyDataset load(Path path, DoubleConsumer progress) throws LoadException{
+        SankeyDatasetCache cache = SankeyDatasetCache.shared();
+        if (cache == null){
+            return parse(path, progress);
+        }
+        SankeyDataset cached = cache.get(path);
+        if (cached != null){
+            report(progress, 1, 1);
+            return cached;
+        }
+//        The stamp is taken first, a file changed while it is read gets a cache file that never matches
+        SankeyDatasetCache.Stamp stamp;
+        try {
+            stamp = SankeyDatasetCache.Stamp.of(path);
+        }
+        catch (IOException ioe){
+            return parse(path, progress);
+        }
+        SankeyDataset dataset = parse(path, progress);
+        cache.put(path, dataset, stamp);
+        return dataset;
+    }
+
+    //    Read the text of the file without the cache
+    //    With -Dsankey.parse.parallel=false big files are read by MappedSankeyDataset on one thread instead
+    //    The size is taken once, a big file is opened once and its first lines and rows are read through that channel
+    public static SankeyDataset parse(Path path, DoubleConsumer progress) throws LoadException{
+        try {
+            long size = Files.size(path);
+            boolean parallel = ParallelSankeyParser.ENABLED && size >= ParallelSankeyParser.PARALLEL_THRESHOLD;
+            if (parallel || size >= MappedSankeyDataset.MAPPED_THRESHOLD){
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+                    if (!isGraphFile(path, channel, size)){
+                        return parallel ? ParallelSankeyParser.load(path, channel, size, progress)
+                                : MappedSankeyDataset.load(path, channel, size, progress);
+                    }
+                }
+            }
+        }
+        catch (IOException ioe){
+            if (ioe instanceof LoadException){
+                throw (LoadException) ioe;
+            }
+//            Let loadBuffered report the missing or unreadable file
+        }
+        return loadBuffered(path, progress);
+    }
+
+    public static SankeyDataset loadBuffered(Path path) throws LoadException{
+        return loadBuffered(path, null);
+    }
+
+    //    Read the title, the source and all branches in a single pass over the file
+    public static SankeyDataset loadBuffered(Path path, DoubleConsumer progress) throws LoadException{
+        if (!Files.isRegularFile(path)){
+            throw new LoadException(Reason.NOT_FOUND, path, 0, "This file does not exist!");
+        }
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8), BUFFER_SIZE)){
+            String title = reader.readLine();
+            if (title == null){
+                throw new LoadException(Reason.MISSING_TITLE, path, 1, "The file is empty");
+            }
+            String source = reader.readLine();
+            if (source == null){
+                throw new LoadException(Reason.MISSING_SOURCE, path, 2, "The file has no source label");
+            }
+            if (SankeyGraph.isFlow(source)){
+                SankeyDataset dataset = new SankeyDataset(title, SankeyGraph.read(path, source, reader));
+                report(progress, 1, 1);
+                return dataset;
+            }
+
+//            Guess the number of rows from the file size so that the arrays rarely grow
+            long fileSize = Files.size(path);
+            int capacity = (int) Math.min(fileSize / 8 + 1, MAX_INITIAL_ROWS);
+            String[] labels = new String[capacity];
+            long[] values = new long[capacity];
+            int rows = 0;
+
+            String line;
+            int lineNumber = 2;
+            //charsRead counts characters and line ends, it is close enough to bytes for progress
+            long charsRead = title.length() + source.length() + 2;
+            while ((line = reader.readLine()) != null){
+                lineNumber++;
+                charsRead += line.length() + 1;
+                if (lineNumber % PROGRESS_LINES == 0){
+                    checkCancelled(path, lineNumber);
+                    report(progress, charsRead, fileSize);
+                }
+                line = line.stripTrailing();
+                if (line.isEmpty()){
+                    continue;
+                }
+//                The value is the last word, everything before the last space is the label
+                int space = line.lastIndexOf(' ');
+                if (space < 0){
+                    throw new LoadException(Reason.BAD_ROW, path, lineNumber,
+                            "Expected a label and a value but found \"" + line + "\"");
+                }
+                long value;
+                try {
+                    value = Long.parseLong(line, space + 1, line.length(), 10);
+                }
+                catch (NumberFormatException nfe){
+                    throw new LoadException(Reason.BAD_VALUE, path, lineNumber,
+                            "\"" + line.substring(space + 1) + "\" is not a number");
+                }
+                if (rows == labels.length){
+                    labels = Arrays.copyOf(labels, rows * 2);
+                    values = Arrays.copyOf(values, rows * 2);
+                }
+                labels[rows] = line.substring(0, space);
+                values[rows] = value;
+                rows++;
+            }
+
+            if (rows == 0){
+                throw new LoadException(Reason.NO_ROWS, path, lineNumber, "The file has no branches");
+            }
+            report(progress, fileSize, fileSize);
+            return new SankeyDataset(title, source, Arrays.copyOf(labels, rows), Arrays.copyOf(values, rows));
+        }
+        catch (IOException ioe){
+            if (ioe instanceof LoadException){
+                throw (LoadException) ioe;
+            }
+            throw new LoadException(Reason.IO_ERROR, path, 0, ioe.getMessage());
+        }
+    }
+
+    //    Whether the second line of a file is a flow, so the file has to be read as a SankeyGraph
+    //    The line is looked for in the first HEAD_BYTES of the open channel, only a longer title or source reads more
+    static boolean isGraphFile(Path path, FileChannel channel, long size) throws IOException{
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(size, HEAD_BYTES));
+        while (head.hasRemaining()){
+            if (channel.read(head, head.position()) < 0){
+                break;
+            }
+        }
+        byte[] bytes = head.array();
+        int length = head.position();
+        int first = 0;
+        while (first < length && bytes[first] != '\n'){
+            first++;
+        }
+        int second = first + 1;
+        while (second < length && bytes[second] != '\n'){
+            second++;
+        }
+        if (second >= length && length < size){
+            return isGraphFile(path);
+        }
+        return first < length && SankeyGraph.isFlow(new String(bytes, first + 1, Math.min(second, length) - first - 1, StandardCharsets.UTF_8));
+    }
+
+    static boolean isGraphFile(Path path) throws IOException{
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)){
+            reader.readLine();
+            String second = reader.readLine();
+            return second != null && SankeyGraph.isFlow(second);
+        }
+    }
+
+    //    Stop loading when the thread has been interrupted, for example by Future.cancel
+    static void checkCancelled(Path path, int lineNumber) throws LoadException{
+        if (Thread.currentThread().isInterrupted()){
+            throw new LoadException(Reason.CANCELLED, path, lineNumber, "Loading was cancelled");
+        }
+    }
+
+    static void report(DoubleConsumer progress, long done, long size){
+        if (progress != null){
+            progress.accept(size == 0 ? 1 : Math.min(1.0, (double) done / size));
+        }
+    }
+
+    //    The reasons a file can not be shown as a Sankey diagram
+    public enum Reason {
+        NOT_FOUND,
+        MISSING_TITLE,
+        MISSING_SOURCE,
+        BAD_ROW,
+        BAD_VALUE,
+        NO_ROWS,
+        IO_ERROR,
+        CANCELLED,
+        CYCLE
+    }
+
+    //    LoadException tells which file failed, at which line and why
+    public static class LoadException extends IOException {
+        private static final long serialVersionUID = 1L;
+        final Reason reason;
+        final Path path;
+        //lineNumber starts from 1, value 0 means the problem is not about a single line
+        final int lineNumber;
+
+        public LoadException(Reason reason, Path path, int lineNumber, String message){
+            super(message);
+            this.reason = reason;
+            this.path = path;
+            this.lineNumber = lineNumber;
+        }
+
+        public Reason getReason(){
+            return reason;
+        }
+
+        public Path getPath(){
+            return path;
+        }
+
+        public int getLineNumber(){
+            return lineNumber;
+        }
+
+        //    A message that can be shown to the user directly
+        public String describe(){
+            String where = path.getFileName().toString();
+            if (lineNumber > 0){
+                where += " (line " + lineNumber + ")";
+            }
+            return where + ": " + getMessage();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+import java.util.stream.Stream;
+
+/**
+ SankeyDatasetCache keeps a binary copy of every file read, so opening it again does not parse text
+ A cache file holds the Stamp of its source (size, modification time to the nanosecond and a check of
+ its first and last block), the title and the source label, a table of the distinct labels,
+ the label of every row and the values as longs
+ It is read through a mapped buffer, only the values are copied, labels are decoded when they are shown
+ A cache file whose source has another stamp is ignored and deleted, so changes are never missed,
+ not even a rewrite of the same size within the time resolution of the file system
+ The folder is kept under MAX_BYTES by deleting the least recently used files, a hit counts as a use
+ The cache files are not written next to the data but in one folder, so read only data folders are cached
+ and the project folder only holds what the user put there
+ The folder is -Dsankey.cache.dir, or $XDG_CACHE_HOME/sankey, or ~/.cache/sankey,
+ -Dsankey.cache=false turns the cache off
+ Files of flows (SankeyGraph) are not cached
+ */
+public class SankeyDatasetCache {
+    static final int MAGIC = 0x534E4B43;
+    static final int VERSION = 2;
+    static final String EXTENSION = ".sankeycache";
+    static final boolean ENABLED = !"false".equals(System.getProperty("sankey.cache"));
+    //the most the folder may hold, -Dsankey.cache.max in megabytes changes it
+    static final long MAX_BYTES = Long.getLong("sankey.cache.max", 256) * 1024 * 1024;
+    static SankeyDatasetCache shared;
+
+    final Path dir;
+    final long maxBytes;
+    //cache files are written on this thread, so opening a diagram does not wait for them
+    final ExecutorService writer = Executors.newSingleThreadExecutor(SankeyExecutors.daemonThreads("sankey-cache"));
+
+    public SankeyDatasetCache(Path dir, long maxBytes){
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    //    The cache used by SankeyDataset.load, or null when it is turned off
+    public static synchronized SankeyDatasetCache shared(){
+        if (!ENABLED){
+            return null;
+        }
+        if (shared == null){
+            shared = new SankeyDatasetCache(defaultDir(), MAX_BYTES);
+        }
+        return shared;
+    }
+
+    static Path defaultDir(){
+        String configured = System.getProperty("sankey.cache.dir");
+        if (configured != null){
+            return Paths.get(configured);
+        }
+        String xdg = System.getenv("XDG_CACHE_HOME");
+        Path base = xdg != null && !xdg.isEmpty() ? Paths.get(xdg) : Paths.get(System.getProperty("user.home"), ".cache");
+        return base.resolve("sankey");
+    }
+
+    //    The dataset of path when the cache has it for the current stamp of the file, otherwise null
+    public SankeyDataset get(Path path){
+        Path file = fileFor(path);
+        if (!Files.isRegularFile(file)){
+            return null;
+        }
+        try {
+            String source = key(path);
+            Stamp stamp = Stamp.of(path);
+            SankeyDataset dataset;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+                dataset = read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), source, stamp);
+            }
+            if (dataset == null){
+                Files.deleteIfExists(file);
+                return null;
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return dataset;
+        }
+        catch (IOException | RuntimeException e){
+//            A broken cache file is only a lost shortcut
+            try {
+                Files.deleteIfExists(file);
+            }
+            catch (IOException ignored){
+            }
+            return null;
+        }
+    }
+
+    //    Write the dataset of path in the background, stamp is taken before the file was read
+    public void put(Path path, SankeyDataset dataset, Stamp stamp){
+        if (dataset.getGraph() != null){
+            return;
+        }
+        writer.execute(() -> {
+            try {
+                write(path, dataset, stamp);
+                evict();
+            }
+            catch (IOException ioe){
+                System.out.println("Can not cache " + path + ": " + ioe.getMessage());
+            }
+        });
+    }
+
+    //    Wait until the cache files asked for so far are written
+    public void flush() throws InterruptedException{
+        try {
+            writer.submit(() -> {
+            }).get();
+        }
+        catch (ExecutionException ee){
+            throw new IllegalStateException(ee.getCause());
+        }
+    }
+
+    void write(Path path, SankeyDataset dataset, Stamp stamp) throws IOException{
+        Files.createDirectories(dir);
+        int rows = dataset.size();
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        int[] rowLabels = new int[rows];
+        for (int i = 0; i < rows; i++){
+            String label = dataset.getLabel(i);
+            Integer id = ids.get(label);
+            if (id == null){
+                id = table.size();
+                ids.put(label, id);
+                table.add(label);
+            }
+            rowLabels[i] = id;
+        }
+
+        Path file = fileFor(path);
+        Path temporary = Files.createTempFile(dir, "write", ".tmp");
+        try {
+            writeFile(temporary, path, dataset, stamp, table, rowLabels);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    static void writeFile(Path temporary, Path path, SankeyDataset dataset, Stamp stamp,
+                          List<String> table, int[] rowLabels) throws IOException{
+        int rows = rowLabels.length;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(stamp.size);
+            out.writeLong(stamp.modified);
+            out.writeLong(stamp.check);
+            writeString(out, key(path));
+            writeString(out, dataset.getTitle());
+            writeString(out, dataset.getSource());
+            out.writeInt(rows);
+            out.writeInt(table.size());
+            byte[][] bytes = new byte[table.size()][];
+            int offset = 0;
+            for (int i = 0; i < bytes.length; i++){
+                bytes[i] = table.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(offset);
+                offset += bytes[i].length;
+            }
+            out.writeInt(offset);
+            for (byte[] label : bytes){
+                out.write(label);
+            }
+            for (int id : rowLabels){
+                out.writeInt(id);
+            }
+            for (int i = 0; i < rows; i++){
+                out.writeLong(dataset.getValue(i));
+            }
+        }
+    }
+
+    static void writeString(DataOutputStream out, String text) throws IOException{
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    //    Read a cache file, null when it belongs to another file or to another version of it
+    static SankeyDataset read(MappedByteBuffer buffer, String source, Stamp stamp){
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != stamp.size
+                || buffer.getLong() != stamp.modified || buffer.getLong() != stamp.check){
+            return null;
+        }
+        if (!readString(buffer).equals(source)){
+            return null;
+        }
+        String title = readString(buffer);
+        String sourceLabel = readString(buffer);
+        int rows = buffer.getInt();
+        int tableSize = buffer.getInt();
+        int[] offsets = new int[tableSize + 1];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + 4 * offsets.length);
+        int labelsStart = buffer.position();
+        buffer.position(labelsStart + offsets[tableSize]);
+        int[] rowLabels = new int[rows];
+        buffer.asIntBuffer().get(rowLabels);
+        buffer.position(buffer.position() + 4 * rows);
+        long[] values = new long[rows];
+        buffer.asLongBuffer().get(values);
+        return new Cached(title, sourceLabel, values, buffer, labelsStart, offsets, rowLabels);
+    }
+
+    static String readString(ByteBuffer buffer){
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //    Delete the least recently used cache files until the folder fits in maxBytes
+    void evict() throws IOException{
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)){
+            files = list.filter(file -> file.toString().endsWith(EXTENSION)).collect(Collectors.toList());
+        }
+        Map<Path, FileTime> used = new HashMap<>();
+        long total = 0;
+        for (Path file : files){
+            used.put(file, Files.getLastModifiedTime(file));
+            total += Files.size(file);
+        }
+        files.sort(Comparator.comparing(used::get));
+        for (Path file : files){
+            if (total <= maxBytes){
+                break;
+            }
+            total -= Files.size(file);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    //    The cache file of a source file, named by a hash of its absolute path
+    Path fileFor(Path path){
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key(path).getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++){
+                name.append(String.format("%02x", hash[i]));
+            }
+            return dir.resolve(name + EXTENSION);
+        }
+        catch (NoSuchAlgorithmException nsae){
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    static String key(Path path){
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    //    What a cache file is checked against: the size, the modification time in nanoseconds and a CRC of the
+    //    first and last CHECK_BYTES of the file, so a rewrite that keeps the size and the time is still noticed
+    static final class Stamp {
+        static final int CHECK_BYTES = 4096;
+        final long size;
+        final long modified;
+        final long check;
+
+        Stamp(long size, long modified, long check){
+            this.size = size;
+            this.modified = modified;
+            this.check = check;
+        }
+
+        static Stamp of(Path path) throws IOException{
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+                long size = channel.size();
+                long modified = Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS);
+                ByteBuffer block = ByteBuffer.allocate((int) Math.min(size, CHECK_BYTES));
+                long first = crc(channel, block, 0);
+                long last = crc(channel, block, size - block.capacity());
+                return new Stamp(size, modified, first << 32 | last);
+            }
+        }
+
+        static long crc(FileChannel channel, ByteBuffer block, long position) throws IOException{
+            block.clear();
+            while (block.hasRemaining()){
+                if (channel.read(block, position + block.position()) < 0){
+                    break;
+                }
+            }
+            block.flip();
+            CRC32C crc = new CRC32C();
+            crc.update(block);
+            return crc.getValue();
+        }
+    }
+
+    //    A dataset read from a cache file, its labels stay in the mapped buffer until they are asked for
+    static final class Cached extends SankeyDataset {
+        final ByteBuffer buffer;
+        final int labelsStart;
+        final int[] offsets;
+        final int[] rowLabels;
+        //the distinct labels decoded so far
+        final String[] decoded;
+
+        Cached(String title, String source, long[] values, ByteBuffer buffer, int labelsStart, int[] offsets, int[] rowLabels){
+            super(title, source, null, values);
+            this.buffer = buffer;
+            this.labelsStart = labelsStart;
+            this.offsets = offsets;
+            this.rowLabels = rowLabels;
+            this.decoded = new String[offsets.length - 1];
+        }
+
+        //    The labels stay in the mapped file until they are decoded, every distinct label is counted as decoded
+        @Override
+        public long estimateBytes(){
+            return 64 + 12L * values.length + 56L * decoded.length + offsets[offsets.length - 1];
+        }
+
+        @Override
+        public String getLabel(int index){
+            int id = rowLabels[index];
+            String label = decoded[id];
+            if (label == null){
+                byte[] bytes = new byte[offsets[id + 1] - offsets[id]];
+                buffer.get(labelsStart + offsets[id], bytes);
+                label = new String(bytes, StandardCharsets.UTF_8);
+                decoded[id] = label;
+            }
+            return label;
+        }
+    }
+}
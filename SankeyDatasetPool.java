@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.DoubleConsumer;
+
+/**
+ SankeyDatasetPool shares the datasets of the open diagram windows, so a file is read once however many windows show it
+ An entry is found by the real path of the file and is only used while the size and the modification time still match
+ Every window holds a Lease and gives it back when it is closed, an entry counts the leases that use it
+ Entries nobody uses stay in memory for when the file is opened again, the least recently used ones are dropped
+ when all entries together are estimated at more than MAX_BYTES, entries with leases are never dropped
+ Two windows opening the same file at the same time wait for one load
+ The datasets never change, so the SankeyColumns and the layouts made from them are shared as well
+ */
+public class SankeyDatasetPool {
+    //the memory the pool may use for datasets, -Dsankey.pool.max in megabytes changes it
+    static final long MAX_BYTES = Long.getLong("sankey.pool.max", 512) * 1024 * 1024;
+    static SankeyDatasetPool shared;
+
+    final long maxBytes;
+    //the current entry of every file, in order of the last use
+    final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    //the estimated size of every loaded entry, also the ones that are no longer current but still leased
+    long bytes;
+
+    public SankeyDatasetPool(long maxBytes){
+        this.maxBytes = maxBytes;
+    }
+
+    public static synchronized SankeyDatasetPool shared(){
+        if (shared == null){
+            shared = new SankeyDatasetPool(MAX_BYTES);
+        }
+        return shared;
+    }
+
+    //    A lease on the dataset of a file, read with SankeyDataset.load unless an entry for this version is there
+    //    progress is only called by the thread that reads the file, it may be null
+    public Lease acquire(Path path, DoubleConsumer progress) throws SankeyDataset.LoadException{
+        Path key;
+        long size;
+        long modified;
+        try {
+            key = path.toRealPath();
+            size = Files.size(key);
+            modified = Files.getLastModifiedTime(key).toMillis();
+        }
+        catch (IOException ioe){
+//            A file that can not be looked at is not pooled, load reports what is wrong with it
+            return new Lease(this, Entry.loaded(path, SankeyDataset.load(path, progress)));
+        }
+
+        Entry entry;
+        boolean reader = false;
+        synchronized (this){
+            entry = entries.get(key);
+            if (entry == null || entry.size != size || entry.modified != modified){
+                if (entry != null){
+                    detach(entry);
+                }
+                entry = new Entry(key, size, modified);
+                entries.put(key, entry);
+                reader = true;
+            }
+            entry.leases++;
+        }
+
+        if (reader){
+            try {
+                SankeyDataset dataset = SankeyDataset.load(path, progress);
+                long estimate = dataset.estimateBytes();
+                synchronized (this){
+                    entry.bytes = estimate;
+                    bytes += estimate;
+                    entry.dataset.complete(dataset);
+                    evict();
+                }
+            }
+            catch (SankeyDataset.LoadException | RuntimeException e){
+                synchronized (this){
+                    detach(entry);
+                    entry.leases = 0;
+                }
+                entry.dataset.completeExceptionally(e);
+                throw e;
+            }
+        }
+        else {
+            try {
+                entry.dataset.get();
+                SankeyDataset.report(progress, 1, 1);
+            }
+            catch (InterruptedException ie){
+                release(entry);
+                Thread.currentThread().interrupt();
+                throw new SankeyDataset.LoadException(SankeyDataset.Reason.CANCELLED, path, 0, "Loading was cancelled");
+            }
+            catch (ExecutionException ee){
+//                The reader got the same error, it has already dropped the entry
+//                A reader that was cancelled says nothing about the file, then this thread reads it
+                Throwable cause = ee.getCause();
+                if (cause instanceof SankeyDataset.LoadException
+                        && ((SankeyDataset.LoadException) cause).getReason() == SankeyDataset.Reason.CANCELLED){
+                    return acquire(path, progress);
+                }
+                if (cause instanceof SankeyDataset.LoadException){
+                    throw (SankeyDataset.LoadException) cause;
+                }
+                throw new SankeyDataset.LoadException(SankeyDataset.Reason.IO_ERROR, path, 0, String.valueOf(cause.getMessage()));
+            }
+        }
+        return new Lease(this, entry);
+    }
+
+    //    An entry that is no longer the current one of its file is dropped when its last lease is given back
+    void detach(Entry entry){
+        if (entries.get(entry.path) == entry){
+            entries.remove(entry.path);
+        }
+        entry.detached = true;
+        if (entry.leases == 0){
+            bytes -= entry.bytes;
+            entry.bytes = 0;
+        }
+    }
+
+    synchronized void release(Entry entry){
+        if (entry.leases <= 0){
+            return;
+        }
+        entry.leases--;
+        if (entry.leases == 0){
+            if (entry.detached){
+                bytes -= entry.bytes;
+                entry.bytes = 0;
+            }
+            evict();
+        }
+    }
+
+    //    Drop the least recently used entries without leases until the pool fits in maxBytes
+    void evict(){
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()){
+            Entry entry = iterator.next();
+            if (entry.leases == 0 && entry.dataset.isDone()){
+                iterator.remove();
+                entry.detached = true;
+                bytes -= entry.bytes;
+                entry.bytes = 0;
+            }
+        }
+    }
+
+    //    The estimated memory of the datasets in the pool
+    public synchronized long getBytes(){
+        return bytes;
+    }
+
+    //    How many windows use the current dataset of a file, 0 when it is not in the pool
+    public synchronized int leasesOf(Path path){
+        try {
+            Entry entry = entries.get(path.toRealPath());
+            return entry == null ? 0 : entry.leases;
+        }
+        catch (IOException ioe){
+            return 0;
+        }
+    }
+
+    //    One version of one file, dataset is done when it has been read
+    static final class Entry {
+        final Path path;
+        final long size;
+        final long modified;
+        final CompletableFuture<SankeyDataset> dataset = new CompletableFuture<>();
+        int leases;
+        long bytes;
+        boolean detached;
+
+        Entry(Path path, long size, long modified){
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        //    An entry outside the pool, for a file whose size and time could not be read
+        static Entry loaded(Path path, SankeyDataset dataset){
+            Entry entry = new Entry(path, -1, -1);
+            entry.dataset.complete(dataset);
+            entry.leases = 1;
+            entry.detached = true;
+            return entry;
+        }
+    }
+
+    //    A window's hold on a dataset, release gives it back, a second release does nothing
+    public static final class Lease {
+        final SankeyDatasetPool pool;
+        final Entry entry;
+        boolean released;
+
+        Lease(SankeyDatasetPool pool, Entry entry){
+            this.pool = pool;
+            this.entry = entry;
+        }
+
+        public SankeyDataset getDataset(){
+            return entry.dataset.join();
+        }
+
+        public synchronized void release(){
+            if (!released){
+                released = true;
+                pool.release(entry);
+            }
+        }
+    }
+}
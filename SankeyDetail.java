@@ -0,0 +1,131 @@
+import java.util.*;
+
+/**
+ SankeyDetail is the part of a single level diagram that is worth drawing at one height
+ Branches thinner than MIN_PIXELS are merged into one branch at the bottom called 'Other (n)'
+ The threshold is in pixels, so a taller window shows more branches and a smaller one fewer
+ Every branch left is at least MIN_PIXELS tall, so the number of nodes stays small however long the file is
+ columns are the SankeyColumns to draw, index tells where each of their branches came from
+ Which branches are merged only depends on how many are thinner than the threshold, mergedAt counts them with a
+ binary search over the values sorted once by SankeyColumns, so a new height costs nothing until the count changes
+ */
+public class SankeyDetail {
+    //branches thinner than this many pixels are merged, -Dsankey.lod.pixels changes it
+    static final double MIN_PIXELS = Double.parseDouble(System.getProperty("sankey.lod.pixels", "3"));
+    static final String OTHER = "Other (";
+
+    //source is the whole data, columns what is drawn of it
+    final SankeyColumns source;
+    final SankeyColumns columns;
+    //index[i] is the position in the full columns of label i, the merged branch has the position of its first member
+    final int[] index;
+    //the position of the merged branch in columns, or -1 when nothing is merged
+    final int other;
+    final int merged;
+
+    SankeyDetail(SankeyColumns source, SankeyColumns columns, int[] index, int other, int merged){
+        this.source = source;
+        this.columns = columns;
+        this.index = index;
+        this.other = other;
+        this.merged = merged;
+    }
+
+    //    Everything, nothing merged
+    public static SankeyDetail full(SankeyColumns columns){
+        int[] index = new int[columns.size()];
+        for (int i = 0; i < index.length; i++){
+            index[i] = i;
+        }
+        return new SankeyDetail(columns, columns, index, -1, 0);
+    }
+
+    //    Merge the branches that would be thinner than minPixels in a diagram of this height
+    public static SankeyDetail of(SankeyColumns columns, double height, double minPixels){
+        return of(columns, mergedAt(columns, height, minPixels));
+    }
+
+    //    How many branches are merged at this height, 0 when nothing is
+    //    The pixels are worked out with the scale of SankeyLayout, one merged branch is not worth it
+    public static int mergedAt(SankeyColumns columns, double height, double minPixels){
+        long total = columns.getTotal();
+        if (height <= 0 || total <= 0 || columns.size() < 4){
+            return 0;
+        }
+        double scale = total / height * 5000 / 2025;
+        long[] sorted = columns.sortedValues();
+        int low = 0;
+        int high = sorted.length;
+        while (low < high){
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] / scale < minPixels){
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low < 2 ? 0 : low;
+    }
+
+    //    Merge the hidden thinnest branches, hidden comes from mergedAt
+    //    Equal values are merged together, so the branches below the first value shown are exactly the hidden ones
+    public static SankeyDetail of(SankeyColumns columns, int hidden){
+        if (hidden < 2){
+            return full(columns);
+        }
+        synchronized (columns){
+            if (columns.lastDetail != null && columns.lastDetail.merged == hidden){
+                return columns.lastDetail;
+            }
+        }
+        long[] sorted = columns.sortedValues();
+        long shownFrom = hidden < sorted.length ? sorted[hidden] : Long.MAX_VALUE;
+        long[] values = columns.values;
+        int size = columns.size();
+        int shown = size - hidden;
+        String[] labels = new String[shown + 1];
+        long[] viewValues = new long[shown + 1];
+        int[] index = new int[shown + 1];
+        long otherValue = 0;
+        int first = -1;
+        int at = 0;
+        for (int i = 0; i < size; i++){
+            if (i > 0 && values[i] < shownFrom){
+                otherValue += values[i];
+                if (first < 0){
+                    first = i;
+                }
+                continue;
+            }
+            labels[at] = columns.labels[i];
+            viewValues[at] = values[i];
+            index[at] = i;
+            at++;
+        }
+//        The name must not be one of the labels of the file
+        Set<String> taken = columns.otherLabels();
+        String name = OTHER + hidden + ")";
+        while (taken.contains(name)){
+            name = name + "'";
+        }
+        labels[at] = name;
+        viewValues[at] = otherValue;
+        index[at] = first;
+        SankeyDetail detail = new SankeyDetail(columns, new SankeyColumns(labels, viewValues), index, at, hidden);
+        synchronized (columns){
+            columns.lastDetail = detail;
+        }
+        return detail;
+    }
+
+    //    Whether the same branches are shown, the values may differ
+    public boolean sameAs(SankeyDetail detail){
+        return detail != null && other == detail.other && merged == detail.merged && Arrays.equals(index, detail.index);
+    }
+
+    //    How many branches of the file are inside the merged branch
+    public int mergedCount(){
+        return merged;
+    }
+}
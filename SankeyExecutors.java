@@ -0,0 +1,32 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ SankeyExecutors makes the executors used for work that must stay off the JavaFX Application Thread
+ On Java 21 and later every task gets its own virtual thread
+ On older Java a cached pool of daemon threads is used, so the program runs on both
+ */
+public class SankeyExecutors {
+    private SankeyExecutors(){
+    }
+
+    //    An executor that starts a new virtual thread for every task when the JDK has them
+    public static ExecutorService newTaskExecutor(String name){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException roe){
+            return Executors.newCachedThreadPool(daemonThreads(name));
+        }
+    }
+
+    //    Daemon threads do not keep the program running after the last window is closed
+    public static ThreadFactory daemonThreads(String name){
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
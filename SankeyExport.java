@@ -0,0 +1,217 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ SankeyExport draws Sankey diagrams into files without opening a window, for reports made in batches
+ Every input can be a '.txt' file, a folder (all '.txt' files under it) or a glob such as 'reports/*.txt'
+ SVG is written by SankeySvg and needs no JavaFX, PNG is a snapshot taken by SankeyPngExport
+ The files are drawn by a pool of worker threads, files per second are printed at the end
+ The output keeps the folders of each file below its folder or glob, so 'a/report.txt' and 'b/report.txt' do not
+ overwrite each other, two inputs that still end up with the same output are refused before anything is drawn
+ A file that can not be read is reported and skipped, the exit code is 1 when any file failed
+ Usage: java SankeyExport [--svg] [--png] [--out folder] [--threads n] [--size 600x500] [--palette REGULAR] inputs...
+ */
+public class SankeyExport {
+    static final String EXTENSION = ".txt";
+
+    final Set<String> formats = new LinkedHashSet<>();
+    Path out = Paths.get(".");
+    int threads = Runtime.getRuntime().availableProcessors();
+    double width = SankeyDiagrams.DIAGRAM_WIDTH;
+    double height = SankeyDiagrams.DIAGRAM_HEIGHT;
+    String palette = "REGULAR";
+    final List<String> inputs = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception{
+        SankeyExport export = new SankeyExport();
+        try {
+            export.parse(args);
+        }
+        catch (IllegalArgumentException iae){
+            System.err.println(iae.getMessage());
+            System.err.println("Usage: java SankeyExport [--svg] [--png] [--out folder] [--threads n] [--size 600x500] [--palette REGULAR] inputs...");
+            System.exit(2);
+        }
+        try {
+            System.exit(export.run() == 0 ? 0 : 1);
+        }
+        catch (IllegalArgumentException iae){
+            System.err.println(iae.getMessage());
+            System.exit(2);
+        }
+    }
+
+    void parse(String[] args){
+        for (int i = 0; i < args.length; i++){
+            switch (args[i]){
+                case "--svg": formats.add("svg"); break;
+                case "--png": formats.add("png"); break;
+                case "--out": out = Paths.get(value(args, ++i)); break;
+                case "--threads": threads = Integer.parseInt(value(args, ++i)); break;
+                case "--palette": palette = value(args, ++i); break;
+                case "--size": {
+                    String[] size = value(args, ++i).split("x");
+                    if (size.length != 2){
+                        throw new IllegalArgumentException("--size needs WIDTHxHEIGHT");
+                    }
+                    width = Double.parseDouble(size[0]);
+                    height = Double.parseDouble(size[1]);
+                    break;
+                }
+                default: inputs.add(args[i]);
+            }
+        }
+        if (formats.isEmpty()){
+            formats.add("svg");
+        }
+        if (inputs.isEmpty()){
+            throw new IllegalArgumentException("No input files");
+        }
+        if (threads < 1){
+            throw new IllegalArgumentException("--threads must be at least 1");
+        }
+    }
+
+    static String value(String[] args, int i){
+        if (i >= args.length){
+            throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        }
+        return args[i];
+    }
+
+    //    Draw every file and return how many failed
+    int run() throws IOException, InterruptedException{
+        Map<Path, String> files = expand(inputs);
+        Files.createDirectories(out);
+        SankeyPalette colors = SankeyPalette.forName(palette);
+        System.out.println("Exporting " + files.size() + " files as " + String.join(", ", formats)
+                + " with " + threads + " threads");
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads, SankeyExecutors.daemonThreads("sankey-export"));
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(files.size());
+        for (Map.Entry<Path, String> entry : files.entrySet()){
+            Path file = entry.getKey();
+            String output = entry.getValue();
+            futures.add(workers.submit(() -> {
+                try {
+                    export(file, output, colors);
+                }
+                catch (SankeyDataset.LoadException le){
+                    failures.incrementAndGet();
+                    System.err.println(le.describe());
+                }
+                catch (IOException | RuntimeException e){
+                    failures.incrementAndGet();
+                    System.err.println(file + ": " + e);
+                }
+                catch (InterruptedException ie){
+//                    The file was not written, so it counts like any other failure
+                    failures.incrementAndGet();
+                    System.err.println(file + ": interrupted");
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        for (Future<?> future : futures){
+            try {
+                future.get();
+            }
+            catch (ExecutionException ee){
+                failures.incrementAndGet();
+            }
+        }
+        workers.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int done = files.size() - failures.get();
+        System.out.printf("%d files in %.2f s, %.1f files/s, %d failed%n",
+                done, seconds, seconds > 0 ? done / seconds : 0.0, failures.get());
+        return failures.get();
+    }
+
+    //    output is the path of the file below its input without the extension, the drawings get it inside out
+    void export(Path file, String output, SankeyPalette colors) throws IOException, InterruptedException{
+        SankeyDataset dataset = SankeyDataset.load(file);
+        Path target = out.resolve(output);
+        if (target.getParent() != null){
+            Files.createDirectories(target.getParent());
+        }
+        if (formats.contains("svg")){
+//            The seed comes from the name, so a random palette gives the same picture every night
+            long seed = withoutExtension(file.getFileName().toString()).hashCode();
+            SankeySvg.of(dataset, colors, width, height, seed).write(out.resolve(output + ".svg"));
+        }
+        if (formats.contains("png")){
+            SankeyPngExport.write(dataset, colors, width, height, out.resolve(output + ".png"));
+        }
+    }
+
+    static String withoutExtension(String name){
+        return name.endsWith(EXTENSION) ? name.substring(0, name.length() - EXTENSION.length()) : name;
+    }
+
+    //    Turn the inputs into files, sorted so that the order is the same on every run
+    //    Every file gets its output name: its path below the folder or the glob base, or its name for a single file
+    static Map<Path, String> expand(List<String> inputs) throws IOException{
+        Map<Path, String> files = new TreeMap<>();
+        for (String input : inputs){
+            if (input.contains("*") || input.contains("?") || input.contains("[")){
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input);
+                Path base = globBase(input);
+                try (Stream<Path> walk = Files.walk(base)){
+                    walk.filter(Files::isRegularFile)
+                            .filter(path -> matcher.matches(base.equals(Paths.get(".")) ? base.relativize(path) : path))
+                            .forEach(path -> files.putIfAbsent(path.normalize(), outputName(base, path)));
+                }
+                continue;
+            }
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path)){
+                try (Stream<Path> walk = Files.walk(path)){
+                    walk.filter(Files::isRegularFile).filter(p -> p.toString().endsWith(EXTENSION))
+                            .forEach(p -> files.putIfAbsent(p.normalize(), outputName(path, p)));
+                }
+            }
+            else {
+                Path file = !input.endsWith(EXTENSION) && !Files.exists(path) ? Paths.get(input + EXTENSION) : path;
+                files.putIfAbsent(file.normalize(), withoutExtension(file.getFileName().toString()));
+            }
+        }
+//        Two workers writing the same output would overwrite each other without a word
+        Map<String, Path> owners = new HashMap<>();
+        for (Map.Entry<Path, String> entry : files.entrySet()){
+            Path other = owners.putIfAbsent(entry.getValue(), entry.getKey());
+            if (other != null){
+                throw new IllegalArgumentException(other + " and " + entry.getKey() + " would both be written as " + entry.getValue());
+            }
+        }
+        return files;
+    }
+
+    static String outputName(Path base, Path file){
+        String relative = base.relativize(file).normalize().toString().replace(File.separatorChar, '/');
+        return withoutExtension(relative);
+    }
+
+    //    The folder before the first part with a wildcard, the walk starts there
+    static Path globBase(String glob){
+        Path base = Paths.get(".");
+        int wildcard = glob.length();
+        for (char c : new char[]{'*', '?', '['}){
+            int at = glob.indexOf(c);
+            if (at >= 0){
+                wildcard = Math.min(wildcard, at);
+            }
+        }
+        int slash = glob.lastIndexOf('/', wildcard);
+        if (slash > 0){
+            base = Paths.get(glob.substring(0, slash));
+        }
+        return base;
+    }
+}
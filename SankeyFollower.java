@@ -0,0 +1,170 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+import javafx.application.Platform;
+import javafx.stage.Stage;
+
+/**
+ SankeyFollower keeps an open diagram window up to date with its source file
+ It listens to the catalog of the project folder for changes of that one file
+ Several changes close together are handled once, DEBOUNCE_MILLIS after the last of them
+ The file is read again in the background and SankeyPane.setDataset moves the diagram to the new values
+ With -Dsankey.tail=true a file that only grows is followed by a SankeyTail instead, only the new lines are read
+ and the running totals are pushed at most once every REFRESH_MILLIS, a steady stream of lines still redraws
+ Files of flows are always read again as a whole
+ The follower holds the SankeyDatasetPool lease of its window, a reload takes a lease on the new version
+ and gives back the old one, closing the window gives back the last one
+ */
+public class SankeyFollower implements DatasetCatalog.Listener {
+    //how long the file has to stay unchanged before it is read again
+    static final long DEBOUNCE_MILLIS = 300;
+    static final boolean TAIL = Boolean.getBoolean("sankey.tail");
+    //the shortest time between two pushes of a tailed file, -Dsankey.tail.refresh changes it
+    static final long REFRESH_MILLIS = Long.getLong("sankey.tail.refresh", 250);
+    static final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(SankeyExecutors.daemonThreads("sankey-follow"));
+
+    final DatasetCatalog catalog;
+    final Path path;
+    final String name;
+    final SankeyPane pane;
+    final Stage stage;
+    //lease is the dataset shown now and is used on the FX thread, stopped is set when the window is closed
+    SankeyDatasetPool.Lease lease;
+    volatile boolean stopped;
+    //the reload waiting for the file to settle
+    ScheduledFuture<?> scheduled;
+    //tail is null unless the file is tailed, lastPush is when its totals were last sent to the pane
+    final SankeyTail tail;
+    long lastPush;
+
+    SankeyFollower(DatasetCatalog catalog, Path path, SankeyPane pane, Stage stage, SankeyDatasetPool.Lease lease){
+        this.catalog = catalog;
+        this.lease = lease;
+        this.path = path;
+        this.name = catalog.nameOf(path);
+        this.pane = pane;
+        this.stage = stage;
+        this.tail = TAIL ? new SankeyTail(path) : null;
+    }
+
+    //    Follow the file of a window until the window is closed
+    //    Files outside the project folder are not watched, their windows stay as they are
+    public static void follow(Path path, SankeyPane pane, Stage stage, SankeyDatasetPool.Lease lease){
+        DatasetCatalog catalog = DatasetCatalog.forWorkingDirectory();
+        SankeyFollower follower = new SankeyFollower(catalog, path, pane, stage, lease);
+        stage.addEventHandler(javafx.stage.WindowEvent.WINDOW_HIDDEN, event -> follower.stop());
+        if (follower.name == null){
+            return;
+        }
+        catalog.addListener(follower);
+        if (follower.tail != null){
+//            The first poll reads what is already there, later ones start from its end
+            follower.modified(follower.name);
+        }
+    }
+
+    void stop(){
+        stopped = true;
+        lease.release();
+        catalog.removeListener(this);
+        synchronized (this){
+            if (scheduled != null){
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    @Override
+    public void added(String name){
+//        A file written by replacing it is deleted and created again
+        modified(name);
+    }
+
+    @Override
+    public void removed(String name){
+    }
+
+    @Override
+    public synchronized void modified(String name){
+        if (!name.equals(this.name)){
+            return;
+        }
+        if (tail != null && !tail.isFlowFile()){
+//            Throttled, not debounced: a change while a poll is waiting is read by that poll
+            if (scheduled == null || scheduled.isDone()){
+                long delay = Math.max(0, lastPush + REFRESH_MILLIS - System.currentTimeMillis());
+                scheduled = timer.schedule(() -> SankeyDiagrams.loadExecutor.execute(this::poll), delay, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+        if (scheduled != null){
+            scheduled.cancel(false);
+        }
+        scheduled = timer.schedule(() -> SankeyDiagrams.loadExecutor.execute(this::reload),
+                DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    void poll(){
+        try {
+            boolean changed = tail.poll();
+            if (tail.isFlowFile()){
+                reload();
+                return;
+            }
+            if (!changed || !tail.isReady()){
+                return;
+            }
+            String title = tail.getTitle();
+            SankeyColumns columns = tail.snapshot();
+            synchronized (this){
+                lastPush = System.currentTimeMillis();
+            }
+            Platform.runLater(() -> {
+//                The window may have been closed while the file was read
+                if (stopped){
+                    return;
+                }
+                stage.setTitle(title);
+                pane.setColumns(columns);
+            });
+        }
+        catch (IOException ioe){
+            System.out.println("Can not read " + path + ": " + ioe.getMessage());
+        }
+        catch (RuntimeException re){
+            System.out.println("Can not follow " + path + ": " + re);
+        }
+    }
+
+    //    A new lease that is not handed to the FX thread is given back here
+    void reload(){
+        SankeyDatasetPool.Lease next = null;
+        try {
+            next = SankeyDatasetPool.shared().acquire(path, null);
+            SankeyDatasetPool.Lease loaded = next;
+            SankeyDataset dataset = next.getDataset();
+            Platform.runLater(() -> {
+                if (stopped){
+                    loaded.release();
+                    return;
+                }
+                lease.release();
+                lease = loaded;
+                stage.setTitle(dataset.getTitle());
+                pane.setDataset(dataset);
+            });
+        }
+        catch (SankeyDataset.LoadException le){
+//            The file may be half written, the next change will load it again
+            System.out.println(le.describe());
+        }
+        catch (RuntimeException re){
+            System.out.println("Can not reload " + path + ": " + re);
+            if (next != null){
+                next.release();
+            }
+        }
+    }
+}
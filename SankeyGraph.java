@@ -0,0 +1,240 @@
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ SankeyGraph holds a diagram with many levels, for example source, category, subcategory and sink
+ The file starts with the title like the other files, then every line is a flow
+ written as 'from -> to value', the names may have spaces in them, so the arrow is what splits them
+ A file is read as a graph when its second line is a flow, the source line of a single level file has no value
+ Two flows between the same nodes are added together, flows must not go round in a circle
+ */
+public class SankeyGraph {
+    //ARROW separates the two names of a flow
+    static final String ARROW = " -> ";
+
+    //names of the nodes, in the order they first appear in the file
+    final String[] names;
+    //the flows, edge i goes from node from[i] to node to[i]
+    final int[] from;
+    final int[] to;
+    final long[] values;
+
+    SankeyGraph(String[] names, int[] from, int[] to, long[] values){
+        this.names = names;
+        this.from = from;
+        this.to = to;
+        this.values = values;
+    }
+
+    public int nodeCount(){
+        return names.length;
+    }
+
+    public int edgeCount(){
+        return from.length;
+    }
+
+    public String getName(int node){
+        return names[node];
+    }
+
+    //    About how many bytes of heap the graph holds, see SankeyDataset.estimateBytes
+    public long estimateBytes(){
+        long estimate = 64 + 16L * from.length;
+        for (String name : names){
+            estimate += 56 + name.length();
+        }
+        return estimate;
+    }
+
+    //    A line is a flow when it has an arrow between two names and ends in a number
+    //    A source label may have an arrow in it, but never a value after it
+    static boolean isFlow(String line){
+        line = line.strip();
+        int arrow = line.indexOf(ARROW);
+        int space = line.lastIndexOf(' ');
+        if (arrow < 0 || space < arrow + ARROW.length()){
+            return false;
+        }
+        int digits = space + 1;
+        if (digits < line.length() && (line.charAt(digits) == '-' || line.charAt(digits) == '+')){
+            digits++;
+        }
+        if (digits == line.length()){
+            return false;
+        }
+        for (int i = digits; i < line.length(); i++){
+            if (line.charAt(i) < '0' || line.charAt(i) > '9'){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //    The value of a node is the bigger of what flows in and what flows out
+    public long[] nodeValues(){
+        long[] in = new long[names.length];
+        long[] out = new long[names.length];
+        for (int i = 0; i < from.length; i++){
+            out[from[i]] += values[i];
+            in[to[i]] += values[i];
+        }
+        long[] value = new long[names.length];
+        for (int n = 0; n < names.length; n++){
+            value[n] = Math.max(in[n], out[n]);
+        }
+        return value;
+    }
+
+    //    Whether two graphs have the same nodes and flows, only the values may differ
+    public boolean sameShape(SankeyGraph other){
+        return other != null && Arrays.equals(names, other.names)
+                && Arrays.equals(from, other.from) && Arrays.equals(to, other.to);
+    }
+
+    //    Read the flows of a graph file, firstFlow is the line already read after the title
+    static SankeyGraph read(Path path, String firstFlow, BufferedReader reader) throws IOException{
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        //edges by the pair of nodes, so that repeated flows are added together
+        Map<Long, Integer> edgeIds = new HashMap<>();
+        IntList from = new IntList();
+        IntList to = new IntList();
+        long[] values = new long[16];
+
+        String line = firstFlow;
+        int lineNumber = 2;
+        while (line != null){
+            line = line.strip();
+            if (!line.isEmpty()){
+                int space = line.lastIndexOf(' ');
+                int arrow = line.indexOf(ARROW);
+                if (space < 0 || arrow < 0 || arrow + ARROW.length() > space){
+                    throw new SankeyDataset.LoadException(SankeyDataset.Reason.BAD_ROW, path, lineNumber,
+                            "Expected 'from -> to value' but found \"" + line + "\"");
+                }
+                long value;
+                try {
+                    value = Long.parseLong(line.substring(space + 1));
+                }
+                catch (NumberFormatException nfe){
+                    throw new SankeyDataset.LoadException(SankeyDataset.Reason.BAD_VALUE, path, lineNumber,
+                            "\"" + line.substring(space + 1) + "\" is not a number");
+                }
+                int source = id(line.substring(0, arrow).strip(), ids, names);
+                int target = id(line.substring(arrow + ARROW.length(), space).strip(), ids, names);
+                if (source == target){
+                    throw new SankeyDataset.LoadException(SankeyDataset.Reason.BAD_ROW, path, lineNumber,
+                            "\"" + names.get(source) + "\" flows into itself");
+                }
+                long pair = ((long) source << 32) | target;
+                Integer edge = edgeIds.get(pair);
+                if (edge == null){
+                    edge = from.size;
+                    edgeIds.put(pair, edge);
+                    from.add(source);
+                    to.add(target);
+                    if (edge == values.length){
+                        values = Arrays.copyOf(values, edge * 2);
+                    }
+                }
+                values[edge] += value;
+            }
+            if (lineNumber % SankeyDataset.PROGRESS_LINES == 0){
+                SankeyDataset.checkCancelled(path, lineNumber);
+            }
+            line = reader.readLine();
+            lineNumber++;
+        }
+
+        SankeyGraph graph = new SankeyGraph(names.toArray(new String[0]), from.toArray(), to.toArray(),
+                Arrays.copyOf(values, from.size));
+        if (graph.topologicalOrder() == null){
+            throw new SankeyDataset.LoadException(SankeyDataset.Reason.CYCLE, path, 0,
+                    "The flows go round in a circle");
+        }
+        return graph;
+    }
+
+    static int id(String name, Map<String, Integer> ids, List<String> names){
+        Integer id = ids.get(name);
+        if (id == null){
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    //    The nodes so that every flow goes forward, or null when the flows have a circle
+    int[] topologicalOrder(){
+        int n = names.length;
+        int[] inDegree = new int[n];
+        for (int target : to){
+            inDegree[target]++;
+        }
+        int[][] outgoing = outgoing();
+        int[] order = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int node = 0; node < n; node++){
+            if (inDegree[node] == 0){
+                order[tail++] = node;
+            }
+        }
+        while (head < tail){
+            int node = order[head++];
+            for (int edge : outgoing[node]){
+                if (--inDegree[to[edge]] == 0){
+                    order[tail++] = to[edge];
+                }
+            }
+        }
+        return tail == n ? order : null;
+    }
+
+    //    The edges leaving each node
+    int[][] outgoing(){
+        return adjacency(from);
+    }
+
+    //    The edges arriving at each node
+    int[][] incoming(){
+        return adjacency(to);
+    }
+
+    int[][] adjacency(int[] ends){
+        int[] count = new int[names.length];
+        for (int node : ends){
+            count[node]++;
+        }
+        int[][] edges = new int[names.length][];
+        for (int node = 0; node < names.length; node++){
+            edges[node] = new int[count[node]];
+            count[node] = 0;
+        }
+        for (int edge = 0; edge < ends.length; edge++){
+            int node = ends[edge];
+            edges[node][count[node]++] = edge;
+        }
+        return edges;
+    }
+
+    //    A growing list of int without boxing
+    static final class IntList {
+        int[] items = new int[16];
+        int size;
+
+        void add(int item){
+            if (size == items.length){
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        int[] toArray(){
+            return Arrays.copyOf(items, size);
+        }
+    }
+}
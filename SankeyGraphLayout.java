@@ -0,0 +1,344 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ SankeyGraphLayout places the nodes and flows of a SankeyGraph with many levels
+ Every node gets a column by the longest chain of flows before it, nodes without flows out go to the last column
+ The order inside each column is found by sweeping the barycenters back and forth to cut down crossings,
+ then the nodes are relaxed towards the middle of their neighbours without overlapping
+ The number of rounds depends only on the size of the graph, so big graphs still open quickly
+ Inside a round the nodes of a column are independent, big columns are worked on by the common ForkJoinPool
+ Every node reads only the other columns and writes only its own place, so the layout is the same
+ with any number of threads, -Dsankey.layout.parallel=false or setParallel(false) uses one thread
+ Like SankeyLayout it does not use JavaFX, its results go into the same cache
+ */
+public class SankeyGraphLayout {
+    //how many rounds of sweeping and relaxing at most
+    static final int ITERATIONS = 32;
+    static final int MIN_ITERATIONS = 2;
+    //how many nodes and flows the rounds may visit together, -Dsankey.layout.work changes it
+    //a time limit would make the result depend on the speed of the machine
+    static final long WORK_BUDGET = Long.getLong("sankey.layout.work", 2_000_000);
+    //columns with fewer nodes than this are not worth splitting between threads
+    static final int PARALLEL_THRESHOLD = 512;
+    static volatile boolean parallel = !"false".equals(System.getProperty("sankey.layout.parallel"));
+    //the smallest gap between two nodes in a column, in pixels
+    static final double MIN_PADDING = 2;
+
+    final SankeyGraph graph;
+    final int[][] outgoing;
+    final int[][] incoming;
+    final long[] value;
+    //the nodes of every column from top to bottom
+    final int[][] columns;
+    final double[] x;
+    final double[] y;
+    final double[] height;
+    //sort keys, kept so that the sweeps do not allocate
+    final double[] nodeKey;
+    final double[] edgeKey;
+    double top;
+    double bottom;
+    double padding;
+    double ky;
+
+    SankeyGraphLayout(SankeyGraph graph){
+        this.graph = graph;
+        this.outgoing = graph.outgoing();
+        this.incoming = graph.incoming();
+        this.value = graph.nodeValues();
+        this.columns = columns(graph, outgoing);
+        int n = graph.nodeCount();
+        this.x = new double[n];
+        this.y = new double[n];
+        this.height = new double[n];
+        this.nodeKey = new double[n];
+        this.edgeKey = new double[graph.edgeCount()];
+    }
+
+    //    Get the layout from the cache, or compute it when this graph and size has not been seen recently
+    public static SankeyLayout of(SankeyGraph graph, double width, double height){
+        return SankeyLayout.cached(graph, SankeyGraphLayout.class, width, height, () -> compute(graph, width, height));
+    }
+
+    public static SankeyLayout compute(SankeyGraph graph, double width, double height){
+        return new SankeyGraphLayout(graph).layout(width, height);
+    }
+
+    //    Turn the threads on or off, to compare the two or to keep a busy machine free
+    public static void setParallel(boolean parallel){
+        SankeyGraphLayout.parallel = parallel;
+    }
+
+    public static boolean isParallel(){
+        return parallel;
+    }
+
+    //    Run action for 0 to count - 1, on several threads when it is worth it
+    //    The actions must not write to the same places
+    static void forEach(int count, IntConsumer action){
+        if (parallel && count >= PARALLEL_THRESHOLD){
+            IntStream.range(0, count).parallel().forEach(action);
+        }
+        else {
+            for (int i = 0; i < count; i++){
+                action.accept(i);
+            }
+        }
+    }
+
+    //    How many rounds fit in the work budget, every round visits the nodes and flows four times
+    int rounds(){
+        long work = 4L * (graph.nodeCount() + graph.edgeCount());
+        return (int) Math.max(MIN_ITERATIONS, Math.min(ITERATIONS, WORK_BUDGET / Math.max(1, work)));
+    }
+
+    //    The column of every node, the longest chain of flows that leads to it
+    static int[][] columns(SankeyGraph graph, int[][] outgoing){
+        int n = graph.nodeCount();
+        int[] column = new int[n];
+        int last = 0;
+        for (int node : graph.topologicalOrder()){
+            for (int edge : outgoing[node]){
+                column[graph.to[edge]] = Math.max(column[graph.to[edge]], column[node] + 1);
+            }
+            last = Math.max(last, column[node]);
+        }
+        int[] count = new int[last + 1];
+        for (int node = 0; node < n; node++){
+//            The sinks line up on the right like the branches of a single level diagram
+            if (outgoing[node].length == 0){
+                column[node] = last;
+            }
+            count[column[node]]++;
+        }
+        int[][] columns = new int[last + 1][];
+        for (int c = 0; c <= last; c++){
+            columns[c] = new int[count[c]];
+            count[c] = 0;
+        }
+        for (int node = 0; node < n; node++){
+            columns[column[node]][count[column[node]]++] = node;
+        }
+        return columns;
+    }
+
+    SankeyLayout layout(double width, double height){
+        double nodeWidth = width / 32;
+        double left = width / 4;
+        double right = width - width / 16 - nodeWidth;
+        top = height / 20;
+        bottom = height - height / 20;
+        scale();
+        for (int c = 0; c < columns.length; c++){
+            double columnX = columns.length == 1 ? left : left + (right - left) * c / (columns.length - 1);
+            for (int node : columns[c]){
+                x[node] = columnX;
+            }
+            stack(columns[c]);
+        }
+
+        int rounds = rounds();
+        for (int i = 0; i < rounds; i++){
+            if (i < rounds / 2){
+                sweep(true);
+                sweep(false);
+            }
+            relax(Math.pow(0.99, i), true);
+            relax(Math.pow(0.99, i), false);
+        }
+        return build(nodeWidth, width, height);
+    }
+
+    //    Choose the gap between nodes and the pixels per unit so that the fullest column fits
+    void scale(){
+        double usable = bottom - top;
+        int most = 1;
+        for (int[] column : columns){
+            most = Math.max(most, column.length);
+        }
+        padding = Math.max(MIN_PADDING, Math.min(usable / 25, usable / 2 / most));
+        ky = Double.MAX_VALUE;
+        for (int[] column : columns){
+            long sum = 0;
+            for (int node : column){
+                sum += value[node];
+            }
+            if (sum > 0){
+                ky = Math.min(ky, Math.max(0, usable - (column.length - 1) * padding) / sum);
+            }
+        }
+        if (ky == Double.MAX_VALUE){
+            ky = 0;
+        }
+        for (int node = 0; node < value.length; node++){
+            height[node] = value[node] * ky;
+        }
+    }
+
+    //    Put the nodes of a column under each other in their order and centre them
+    void stack(int[] column){
+        double total = -padding;
+        for (int node : column){
+            total += height[node] + padding;
+        }
+        double at = top + Math.max(0, (bottom - top - total) / 2);
+        for (int node : column){
+            y[node] = at;
+            at += height[node] + padding;
+        }
+    }
+
+    //    Sort every column by the weighted middle of its neighbours in the column before (or after)
+    void sweep(boolean forward){
+        int from = forward ? 1 : columns.length - 2;
+        int step = forward ? 1 : -1;
+        for (int c = from; c >= 0 && c < columns.length; c += step){
+            int[] column = columns[c];
+            forEach(column.length, i -> {
+                int node = column[i];
+                nodeKey[node] = barycenter(node, forward ? incoming[node] : outgoing[node], forward);
+            });
+            sort(column, nodeKey);
+            stack(column);
+        }
+    }
+
+    //    Move every node part of the way to the middle of its neighbours, then undo the overlaps
+    void relax(double alpha, boolean forward){
+        int from = forward ? 1 : columns.length - 2;
+        int step = forward ? 1 : -1;
+        for (int c = from; c >= 0 && c < columns.length; c += step){
+            int[] column = columns[c];
+            forEach(column.length, i -> {
+                int node = column[i];
+                double target = barycenter(node, forward ? incoming[node] : outgoing[node], forward);
+                y[node] += (target - middle(node)) * alpha;
+                nodeKey[node] = y[node];
+            });
+            sort(column, nodeKey);
+            resolveCollisions(column);
+        }
+    }
+
+    //    The middle of the neighbours weighted by the flows, or the middle of the node when it has none
+    double barycenter(int node, int[] edges, boolean incoming){
+        double sum = 0;
+        double weight = 0;
+        for (int edge : edges){
+            int other = incoming ? graph.from[edge] : graph.to[edge];
+            sum += middle(other) * graph.values[edge];
+            weight += graph.values[edge];
+        }
+        return weight > 0 ? sum / weight : middle(node);
+    }
+
+    double middle(int node){
+        return y[node] + height[node] / 2;
+    }
+
+    //    Push overlapping nodes down, then push the column up when it went past the bottom
+    void resolveCollisions(int[] column){
+        double at = top;
+        for (int node : column){
+            y[node] = Math.max(y[node], at);
+            at = y[node] + height[node] + padding;
+        }
+        at = bottom;
+        for (int i = column.length - 1; i >= 0; i--){
+            int node = column[i];
+            if (y[node] + height[node] > at){
+                y[node] = at - height[node];
+            }
+            at = y[node] - padding;
+        }
+    }
+
+    //    Sort the nodes by key, equal keys keep the node order so the result is always the same
+    //    A merge sort of the int array itself, the keys are compared where they are and nothing is boxed
+    static void sort(int[] column, double[] key){
+        if (column.length > 1){
+            mergeSort(column.clone(), column, 0, column.length, key);
+        }
+    }
+
+    //    Sort from..to of column, scratch holds the same nodes there on the way in and is used for the halves
+    static void mergeSort(int[] scratch, int[] column, int from, int to, double[] key){
+        if (to - from < 16){
+            for (int i = from + 1; i < to; i++){
+                int node = column[i];
+                int at = i;
+                while (at > from && before(node, column[at - 1], key)){
+                    column[at] = column[at - 1];
+                    at--;
+                }
+                column[at] = node;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(column, scratch, from, middle, key);
+        mergeSort(column, scratch, middle, to, key);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++){
+            if (right >= to || left < middle && !before(scratch[right], scratch[left], key)){
+                column[i] = scratch[left++];
+            }
+            else {
+                column[i] = scratch[right++];
+            }
+        }
+    }
+
+    static boolean before(int a, int b, double[] key){
+        return key[a] != key[b] ? Double.compare(key[a], key[b]) < 0 : a < b;
+    }
+
+    //    Turn the positions into rectangles, bands and labels
+    //    The flows leave and arrive in the order of the node at the other end, so they do not cross at the nodes
+    SankeyLayout build(double nodeWidth, double width, double height){
+        int n = graph.nodeCount();
+        double firstX = x[columns[0][0]];
+        SankeyLayout.Node[] nodes = new SankeyLayout.Node[n];
+        SankeyLayout.Label[] labels = new SankeyLayout.Label[n];
+        forEach(n, node -> {
+            nodes[node] = new SankeyLayout.Node(x[node], y[node], nodeWidth, Math.max(this.height[node], 1), node);
+            String text = graph.getName(node) + ": " + value[node];
+            if (x[node] == firstX){
+                labels[node] = new SankeyLayout.Label(x[node] - 6, middle(node), text, node);
+            }
+            else {
+                labels[node] = new SankeyLayout.Label(x[node] + nodeWidth + 6, middle(node), text, node, true);
+            }
+        });
+
+//        Every flow leaves one node and arrives at one node, so the nodes write to different places
+        double[] sourceY = new double[graph.edgeCount()];
+        double[] targetY = new double[graph.edgeCount()];
+        forEach(n, node -> place(outgoing[node], y[node], false, sourceY));
+        forEach(n, node -> place(incoming[node], y[node], true, targetY));
+        SankeyLayout.Band[] bands = new SankeyLayout.Band[graph.edgeCount()];
+        forEach(bands.length, edge -> {
+            int target = graph.to[edge];
+            bands[edge] = new SankeyLayout.Band(x[graph.from[edge]] + nodeWidth, sourceY[edge], x[target], targetY[edge],
+                    graph.values[edge] * ky, target);
+        });
+        return new SankeyLayout(width, height, Arrays.asList(nodes), Arrays.asList(bands), List.of(), Arrays.asList(labels));
+    }
+
+    //    Stack the ends of the flows at one node from its top, ordered by where the other end is
+    void place(int[] edges, double start, boolean incoming, double[] ends){
+        int[] sorted = edges.clone();
+        for (int edge : sorted){
+            edgeKey[edge] = middle(incoming ? graph.from[edge] : graph.to[edge]);
+        }
+        sort(sorted, edgeKey);
+        double at = start;
+        for (int edge : sorted){
+            ends[edge] = at;
+            at += graph.values[edge] * ky;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.util.*;
+
+/**
+ SankeyHitIndex finds what is under a point of a SankeyLayout, for diagrams drawn on a canvas without nodes
+ The layout is cut into square cells of CELL pixels and every cell lists the shapes whose bounds touch it
+ A query looks at one cell only, so hover and click cost the same for ten branches or ten thousand
+ Shapes are checked from the last drawn to the first, the texts are on top, then the branches, then the rectangles
+ A branch is checked against its curves and not only its bounds, so the gaps between branches are not hits
+ Branches are indexed as pieces CELL pixels wide, a curve only goes one way so each piece has tight bounds
+ and a cell holds the branches that really pass through it, not every branch whose bounds cover it
+ */
+public class SankeyHitIndex {
+    //the side of a cell in pixels
+    static final double CELL = 32;
+    static final int NODE = 0;
+    static final int BAND = 1;
+    static final int LABEL = 2;
+
+    final SankeyLayout layout;
+    final int columnsCount;
+    final int rowsCount;
+    //shape i has kind[i] and item[i], its index in the list of that kind, and the bounds minX, minY, maxX, maxY
+    //a branch is several shapes with the same item, one for every piece
+    final int[] kind;
+    final int[] item;
+    final double[] minX;
+    final double[] minY;
+    final double[] maxX;
+    final double[] maxY;
+    //the shapes of cell c are cellItems[cellStart[c]] to cellItems[cellStart[c + 1] - 1], in drawing order
+    final int[] cellStart;
+    final int[] cellItems;
+
+    //    labelWidths[i] is the width of text i and labelHeight the height of a text in pixels,
+    //    they are measured by whoever draws the texts
+    public SankeyHitIndex(SankeyLayout layout, double[] labelWidths, double labelHeight){
+        this.layout = layout;
+        int count = layout.nodes.size() + layout.labels.size();
+        for (SankeyLayout.Band band : layout.bands){
+            count += pieces(band);
+        }
+        kind = new int[count];
+        item = new int[count];
+        minX = new double[count];
+        minY = new double[count];
+        maxX = new double[count];
+        maxY = new double[count];
+        int at = 0;
+        for (int i = 0; i < layout.nodes.size(); i++){
+            SankeyLayout.Node node = layout.nodes.get(i);
+            at = add(at, NODE, i, node.x, node.y, node.x + node.width, node.y + node.height);
+        }
+        for (int i = 0; i < layout.bands.size(); i++){
+            SankeyLayout.Band band = layout.bands.get(i);
+            int pieces = pieces(band);
+            double pieceWidth = (band.x1 - band.x0) / pieces;
+            double left = band.x0;
+            double leftY = band.y0;
+            for (int p = 1; p <= pieces; p++){
+                double right = p == pieces ? band.x1 : band.x0 + p * pieceWidth;
+                double rightY = p == pieces ? band.y1 : topAt(band, right);
+                at = add(at, BAND, i, left, Math.min(leftY, rightY), right, Math.max(leftY, rightY) + band.thickness);
+                left = right;
+                leftY = rightY;
+            }
+        }
+        for (int i = 0; i < layout.labels.size(); i++){
+            SankeyLayout.Label label = layout.labels.get(i);
+            double left = label.startsAtX ? label.x : label.x - labelWidths[i];
+            at = add(at, LABEL, i, left, label.y - labelHeight / 2, left + labelWidths[i], label.y + labelHeight / 2);
+        }
+
+        columnsCount = Math.max(1, (int) Math.ceil(layout.width / CELL));
+        rowsCount = Math.max(1, (int) Math.ceil(layout.height / CELL));
+//        Count the shapes of every cell first, then fill one array, so there is no list per cell
+        cellStart = new int[columnsCount * rowsCount + 1];
+        for (int i = 0; i < count; i++){
+            forCells(i, cell -> cellStart[cell + 1]++);
+        }
+        for (int c = 0; c < columnsCount * rowsCount; c++){
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellItems = new int[cellStart[columnsCount * rowsCount]];
+        int[] filled = Arrays.copyOf(cellStart, columnsCount * rowsCount);
+        for (int i = 0; i < count; i++){
+            final int shape = i;
+            forCells(i, cell -> cellItems[filled[cell]++] = shape);
+        }
+    }
+
+    static int pieces(SankeyLayout.Band band){
+        return Math.max(1, (int) Math.ceil((band.x1 - band.x0) / CELL));
+    }
+
+    int add(int at, int kind, int item, double minX, double minY, double maxX, double maxY){
+        this.kind[at] = kind;
+        this.item[at] = item;
+        this.minX[at] = minX;
+        this.minY[at] = minY;
+        this.maxX[at] = maxX;
+        this.maxY[at] = maxY;
+        return at + 1;
+    }
+
+    interface CellAction {
+        void run(int cell);
+    }
+
+    void forCells(int shape, CellAction action){
+        int fromColumn = column(minX[shape]);
+        int toColumn = column(maxX[shape]);
+        int fromRow = row(minY[shape]);
+        int toRow = row(maxY[shape]);
+        for (int r = fromRow; r <= toRow; r++){
+            for (int c = fromColumn; c <= toColumn; c++){
+                action.run(r * columnsCount + c);
+            }
+        }
+    }
+
+    int column(double x){
+        return Math.max(0, Math.min(columnsCount - 1, (int) Math.floor(x / CELL)));
+    }
+
+    int row(double y){
+        return Math.max(0, Math.min(rowsCount - 1, (int) Math.floor(y / CELL)));
+    }
+
+    //    The series of the shape at a point, or -1 when there is only background
+    public int seriesAt(double x, double y){
+        int shape = shapeAt(x, y);
+        if (shape < 0){
+            return -1;
+        }
+        switch (kind[shape]){
+            case NODE: return layout.nodes.get(item[shape]).series;
+            case BAND: return layout.bands.get(item[shape]).series;
+            default: return layout.labels.get(item[shape]).series;
+        }
+    }
+
+    //    The index of the top shape at a point, or -1
+    int shapeAt(double x, double y){
+        if (x < 0 || y < 0 || x > layout.width || y > layout.height){
+            return -1;
+        }
+        int cell = row(y) * columnsCount + column(x);
+        for (int i = cellStart[cell + 1] - 1; i >= cellStart[cell]; i--){
+            int shape = cellItems[i];
+            if (x < minX[shape] || x > maxX[shape] || y < minY[shape] || y > maxY[shape]){
+                continue;
+            }
+            if (kind[shape] != BAND || insideBand(layout.bands.get(item[shape]), x, y)){
+                return shape;
+            }
+        }
+        return -1;
+    }
+
+    //    The lower curve of a branch is the upper one moved down by its thickness
+    //    Along x the curve only moves right, so the point of the curve above x is found by halving
+    static boolean insideBand(SankeyLayout.Band band, double x, double y){
+        double top = topAt(band, x);
+        return y >= top && y <= top + band.thickness;
+    }
+
+    //    The y of the upper curve of a branch at x
+    static double topAt(SankeyLayout.Band band, double x){
+        double low = 0;
+        double high = 1;
+        for (int i = 0; i < 24; i++){
+            double t = (low + high) / 2;
+            if (cubic(band.x0, band.controlX0(), band.controlX1(), band.x1, t) < x){
+                low = t;
+            }
+            else {
+                high = t;
+            }
+        }
+        return cubic(band.y0, band.y0, band.y1, band.y1, (low + high) / 2);
+    }
+
+    static double cubic(double p0, double p1, double p2, double p3, double t){
+        double u = 1 - t;
+        return u * u * u * p0 + 3 * u * u * t * p1 + 3 * u * t * t * p2 + t * t * t * p3;
+    }
+}
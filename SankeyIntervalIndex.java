@@ -0,0 +1,90 @@
+import java.util.*;
+
+/**
+ SankeyIntervalIndex finds the shapes of a layout whose vertical extent overlaps a range of y
+ The extents are sorted by their top, and maxBottom[i] is the lowest bottom among the first i + 1 of them
+ A query finds the last extent that starts above the end of the range with a binary search,
+ then walks back while maxBottom can still reach the range, so it stops soon after the shapes it returns
+ Branches of a single level diagram come sorted already, then building the index is one pass
+ */
+public class SankeyIntervalIndex {
+    //order[i] is the shape with the i-th smallest top, tops and bottoms follow that order
+    final int[] order;
+    final double[] tops;
+    final double[] bottoms;
+    final double[] maxBottom;
+
+    //    top[i] and bottom[i] are the extent of shape i
+    public SankeyIntervalIndex(double[] top, double[] bottom){
+        int size = top.length;
+        order = new int[size];
+        for (int i = 0; i < size; i++){
+            order[i] = i;
+        }
+        sort(order, new int[size], top, 0, size);
+        tops = new double[size];
+        bottoms = new double[size];
+        maxBottom = new double[size];
+        double lowest = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++){
+            tops[i] = top[order[i]];
+            bottoms[i] = bottom[order[i]];
+            lowest = Math.max(lowest, bottoms[i]);
+            maxBottom[i] = lowest;
+        }
+    }
+
+    //    The shapes that overlap from to to, in the order they are drawn
+    public int[] query(double from, double to){
+        int low = 0;
+        int high = tops.length - 1;
+        int last = -1;
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            if (tops[mid] <= to){
+                last = mid;
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        int[] found = new int[16];
+        int count = 0;
+        for (int i = last; i >= 0 && maxBottom[i] >= from; i--){
+            if (bottoms[i] >= from){
+                if (count == found.length){
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = order[i];
+            }
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+    }
+
+    //    A merge sort of shapes by their top, it returns at once for runs that are already in order
+    static void sort(int[] ids, int[] spare, double[] top, int from, int to){
+        if (to - from < 2){
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(ids, spare, top, from, middle);
+        sort(ids, spare, top, middle, to);
+        if (top[ids[middle - 1]] <= top[ids[middle]]){
+            return;
+        }
+        System.arraycopy(ids, from, spare, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++){
+            if (right >= to || (left < middle && top[spare[left]] <= top[spare[right]])){
+                ids[i] = spare[left++];
+            }
+            else {
+                ids[i] = spare[right++];
+            }
+        }
+    }
+}
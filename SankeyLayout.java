@@ -0,0 +1,411 @@
+import java.lang.ref.*;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ SankeyLayout is the geometry of one Sankey diagram at one size
+ It turns the SankeyColumns of the data (label 0 is the source) and a width and height
+ into rectangles, branches, the black lines between branch rectangles and label anchors
+ It does not use JavaFX, so it can be computed for benchmarks and exports without a window
+ A layout never changes after it is made, SankeyLayout.of caches recent layouts
+ The cache holds its data only weakly, the layouts of data nobody uses any more are dropped with it,
+ so a closed window or a dataset dropped by SankeyDatasetPool does not stay in memory through its layouts
+ A layout can be taller than the window, window cuts out the shapes that can be seen
+ */
+public class SankeyLayout {
+    //how many layouts are kept by the cache, the least recently used one is dropped first
+    static final int CACHE_SIZE = 64;
+    //half the height of a text, the texts are 20 pixel Arial
+    static final double LABEL_EXTENT = 14;
+    static final Map<Key, SankeyLayout> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, SankeyLayout> eldest){
+            return size() > CACHE_SIZE;
+        }
+    };
+    //the keys whose data has been garbage collected, their layouts are removed by the next cache lookup
+    static final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    final double width;
+    final double height;
+    //nodes.get(0) is the left rectangle, nodes.get(i) is the rectangle of label i
+    final List<Node> nodes;
+    //the branch going to label i has series i
+    final List<Band> bands;
+    //the black lines drawn between neighbouring branch rectangles
+    final List<Divider> dividers;
+    //labels.get(i) is the text of label i
+    final List<Label> labels;
+    //the interval indexes of nodes, bands, dividers and labels, made by window the first time it needs them
+    SankeyIntervalIndex[] extents;
+
+    SankeyLayout(double width, double height, List<Node> nodes, List<Band> bands, List<Divider> dividers, List<Label> labels){
+        this.width = width;
+        this.height = height;
+        this.nodes = List.copyOf(nodes);
+        this.bands = List.copyOf(bands);
+        this.dividers = List.copyOf(dividers);
+        this.labels = List.copyOf(labels);
+    }
+
+    public List<Node> getNodes(){
+        return nodes;
+    }
+
+    public List<Band> getBands(){
+        return bands;
+    }
+
+    public List<Divider> getDividers(){
+        return dividers;
+    }
+
+    public List<Label> getLabels(){
+        return labels;
+    }
+
+    //    Get the layout from the cache, or compute it when this data and size has not been seen recently
+    //    The data is recognised by identity, new columns are a new dataset
+    public static SankeyLayout of(SankeyColumns columns, double width, double height){
+        return cached(columns, null, width, height, () -> compute(columns, width, height));
+    }
+
+    //    The cache is shared by every kind of layout, data and extra are compared by identity
+    static SankeyLayout cached(Object data, Object extra, double width, double height, Supplier<SankeyLayout> compute){
+        Key key = new Key(data, extra, width, height);
+        synchronized (cache){
+            expunge();
+            SankeyLayout layout = cache.get(key);
+            if (layout != null){
+                return layout;
+            }
+        }
+        SankeyLayout layout = compute.get();
+        synchronized (cache){
+            cache.put(new Key(data, extra, width, height, collected), layout);
+        }
+        return layout;
+    }
+
+    //    Remove the layouts of data that has been collected, called with the cache locked
+    static void expunge(){
+        Reference<?> reference;
+        while ((reference = collected.poll()) != null){
+            cache.remove(((DataReference) reference).key);
+        }
+    }
+
+    //    Compute the layout of the old map and order
+    public static SankeyLayout compute(Map<String, Integer> map, String[] array, double width, double height){
+        return compute(SankeyColumns.of(map, array), width, height);
+    }
+
+    //    Compute the layout, the numbers are the ones SankeyPane has always used
+    //    The sums before the middle branch come from the prefix sums of the columns
+    public static SankeyLayout compute(SankeyColumns columns, double width, double height){
+        int mapSize = columns.size();
+        long[] values = columns.values;
+        List<Node> nodes = new ArrayList<>(mapSize);
+        List<Band> bands = new ArrayList<>(mapSize - 1);
+        List<Divider> dividers = new ArrayList<>(2 * mapSize);
+        List<Label> labels = new ArrayList<>(mapSize);
+
+        double midy = height / 2;
+        double rectangleWidth = width / 32;
+        double scale = values[0] / height * 5000 / 2025;
+        //gap means the length between each branch
+        double gap = 0;
+        //if only one branch gap will be zero
+        if (mapSize == 2){
+            gap = 0;
+        }
+        else {
+            gap = values[0] / (mapSize - 2) / scale;
+        }
+
+//        The middle branch defines the values for the left rectangle
+        int midIndex = columns.middleBranch();
+        double midHeight = midIndex == 0 ? 0 : values[midIndex] / scale;
+        double before = midIndex == 0 ? 0 : columns.sum(1, midIndex) / scale;
+        int branchesBefore = Math.max(0, midIndex - 1);
+
+//        The values for the left rectangle
+        double x1 = width / 16 * 5;
+        double y1 = midy - midHeight / 2 - before;
+
+//        The values for the first branch rectangle
+        double x2 = width / 64 * 45;
+        double y2 = midy - midHeight / 2 - before - gap * branchesBefore;
+
+//        The left rectangle and its text, which ends a little before the rectangle
+        double height1 = values[0] / scale;
+        nodes.add(new Node(x1, y1, rectangleWidth, height1 - 1, 0));
+        labels.add(new Label(width / 64 * 19, y1 + height1 / 2, columns.labels[0] + ": " + values[0], 0));
+
+//        The branch rectangles, the lines between them, the branches and their texts
+        double bandStart = x1 + rectangleWidth;
+        for (int i = 1; i < mapSize; i++){
+            double heightNow = values[i] / scale;
+            nodes.add(new Node(x2, y2, rectangleWidth, heightNow - 1, i));
+            bands.add(new Band(bandStart, y1, x2, y2, heightNow, i));
+            labels.add(new Label(width / 64 * 43, y2 + heightNow / 2, columns.labels[i] + ": " + values[i], i));
+            if (i > 1){
+                dividers.add(new Divider(x2, y2, x2 + rectangleWidth, y2));
+            }
+            y1 += heightNow;
+            y2 += heightNow;
+            if (i < mapSize - 1){
+                dividers.add(new Divider(x2, y2, x2 + rectangleWidth, y2));
+            }
+            y2 += gap;
+        }
+        return new SankeyLayout(width, height, nodes, bands, dividers, labels);
+    }
+
+    //    The part of the layout from top to top + height, moved up by top, with only the shapes that reach into it
+    //    The shapes keep their order and series, so it is drawn and hit tested like a whole layout
+    //    Its cost depends on the shapes that are seen, the indexes are made once for each layout
+    public SankeyLayout window(double top, double height){
+        if (top <= 0 && height >= this.height){
+            return this;
+        }
+        SankeyIntervalIndex[] index = extents();
+        double bottom = top + height;
+        List<Node> seenNodes = new ArrayList<>();
+        for (int i : index[0].query(top, bottom)){
+            Node node = nodes.get(i);
+            seenNodes.add(new Node(node.x, node.y - top, node.width, node.height, node.series));
+        }
+        List<Band> seenBands = new ArrayList<>();
+        for (int i : index[1].query(top, bottom)){
+            Band band = bands.get(i);
+            seenBands.add(new Band(band.x0, band.y0 - top, band.x1, band.y1 - top, band.thickness, band.series));
+        }
+        List<Divider> seenDividers = new ArrayList<>();
+        for (int i : index[2].query(top, bottom)){
+            Divider divider = dividers.get(i);
+            seenDividers.add(new Divider(divider.startX, divider.startY - top, divider.endX, divider.endY - top));
+        }
+        List<Label> seenLabels = new ArrayList<>();
+        for (int i : index[3].query(top, bottom)){
+            Label label = labels.get(i);
+            seenLabels.add(new Label(label.x, label.y - top, label.text, label.series, label.startsAtX));
+        }
+        return new SankeyLayout(width, height, seenNodes, seenBands, seenDividers, seenLabels);
+    }
+
+    synchronized SankeyIntervalIndex[] extents(){
+        if (extents != null){
+            return extents;
+        }
+        double[] top = new double[nodes.size()];
+        double[] bottom = new double[nodes.size()];
+        for (int i = 0; i < top.length; i++){
+            top[i] = nodes.get(i).y;
+            bottom[i] = top[i] + nodes.get(i).height;
+        }
+        SankeyIntervalIndex nodeIndex = new SankeyIntervalIndex(top, bottom);
+        top = new double[bands.size()];
+        bottom = new double[bands.size()];
+        for (int i = 0; i < top.length; i++){
+            Band band = bands.get(i);
+            top[i] = Math.min(band.y0, band.y1);
+            bottom[i] = Math.max(band.y0, band.y1) + band.thickness;
+        }
+        SankeyIntervalIndex bandIndex = new SankeyIntervalIndex(top, bottom);
+        top = new double[dividers.size()];
+        bottom = new double[dividers.size()];
+        for (int i = 0; i < top.length; i++){
+            Divider divider = dividers.get(i);
+            top[i] = Math.min(divider.startY, divider.endY);
+            bottom[i] = Math.max(divider.startY, divider.endY);
+        }
+        SankeyIntervalIndex dividerIndex = new SankeyIntervalIndex(top, bottom);
+        top = new double[labels.size()];
+        bottom = new double[labels.size()];
+        for (int i = 0; i < top.length; i++){
+            top[i] = labels.get(i).y - LABEL_EXTENT;
+            bottom[i] = labels.get(i).y + LABEL_EXTENT;
+        }
+        extents = new SankeyIntervalIndex[]{nodeIndex, bandIndex, dividerIndex, new SankeyIntervalIndex(top, bottom)};
+        return extents;
+    }
+
+    //    The layout a fraction of the way from one layout to another with the same lists
+    //    Used to move the diagram smoothly when the values change, the texts are taken from to
+    public static SankeyLayout interpolate(SankeyLayout from, SankeyLayout to, double fraction){
+        if (fraction >= 1){
+            return to;
+        }
+        List<Node> nodes = new ArrayList<>(to.nodes.size());
+        for (int i = 0; i < to.nodes.size(); i++){
+            Node a = from.nodes.get(i);
+            Node b = to.nodes.get(i);
+            nodes.add(new Node(mix(a.x, b.x, fraction), mix(a.y, b.y, fraction),
+                    mix(a.width, b.width, fraction), mix(a.height, b.height, fraction), b.series));
+        }
+        List<Band> bands = new ArrayList<>(to.bands.size());
+        for (int i = 0; i < to.bands.size(); i++){
+            Band a = from.bands.get(i);
+            Band b = to.bands.get(i);
+            bands.add(new Band(mix(a.x0, b.x0, fraction), mix(a.y0, b.y0, fraction), mix(a.x1, b.x1, fraction),
+                    mix(a.y1, b.y1, fraction), mix(a.thickness, b.thickness, fraction), b.series));
+        }
+        List<Divider> dividers = new ArrayList<>(to.dividers.size());
+        for (int i = 0; i < to.dividers.size(); i++){
+            Divider a = from.dividers.get(i);
+            Divider b = to.dividers.get(i);
+            dividers.add(new Divider(mix(a.startX, b.startX, fraction), mix(a.startY, b.startY, fraction),
+                    mix(a.endX, b.endX, fraction), mix(a.endY, b.endY, fraction)));
+        }
+        List<Label> labels = new ArrayList<>(to.labels.size());
+        for (int i = 0; i < to.labels.size(); i++){
+            Label a = from.labels.get(i);
+            Label b = to.labels.get(i);
+            labels.add(new Label(mix(a.x, b.x, fraction), mix(a.y, b.y, fraction), b.text, b.series, b.startsAtX));
+        }
+        return new SankeyLayout(to.width, to.height, nodes, bands, dividers, labels);
+    }
+
+    static double mix(double a, double b, double fraction){
+        return a + (b - a) * fraction;
+    }
+
+    //    A rectangle, series tells which color it takes
+    public static final class Node {
+        final double x;
+        final double y;
+        final double width;
+        final double height;
+        final int series;
+
+        Node(double x, double y, double width, double height, int series){
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.series = series;
+        }
+    }
+
+    //    A branch from (x0, y0) on the left to (x1, y1) on the right, thickness pixels tall at both ends
+    //    The curves have their control points a quarter of the way in from each end
+    public static final class Band {
+        final double x0;
+        final double y0;
+        final double x1;
+        final double y1;
+        final double thickness;
+        final int series;
+
+        Band(double x0, double y0, double x1, double y1, double thickness, int series){
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.thickness = thickness;
+            this.series = series;
+        }
+
+        double controlX0(){
+            return x0 + (x1 - x0) / 4;
+        }
+
+        double controlX1(){
+            return x1 - (x1 - x0) / 4;
+        }
+    }
+
+    //    A black line between two branch rectangles
+    public static final class Divider {
+        final double startX;
+        final double startY;
+        final double endX;
+        final double endY;
+
+        Divider(double startX, double startY, double endX, double endY){
+            this.startX = startX;
+            this.startY = startY;
+            this.endX = endX;
+            this.endY = endY;
+        }
+    }
+
+    //    A text whose middle is at y, its right end is at x, or its left end when startsAtX is true
+    public static final class Label {
+        final double x;
+        final double y;
+        final String text;
+        final int series;
+        final boolean startsAtX;
+
+        Label(double x, double y, String text, int series){
+            this(x, y, text, series, false);
+        }
+
+        Label(double x, double y, String text, int series, boolean startsAtX){
+            this.x = x;
+            this.y = y;
+            this.text = text;
+            this.series = series;
+            this.startsAtX = startsAtX;
+        }
+    }
+
+    //    The cache key, data by identity and size by value
+    //    The data is only held weakly, a key whose data is gone equals no other key
+    static final class Key {
+        final DataReference data;
+        //the identity hash of the data, kept because the data may be gone when the key is removed
+        final int dataHash;
+        final Object extra;
+        final double width;
+        final double height;
+
+        //    A key for looking up
+        Key(Object data, Object extra, double width, double height){
+            this(data, extra, width, height, null);
+        }
+
+        //    A key for the cache, it is put on the queue when its data has been collected
+        Key(Object data, Object extra, double width, double height, ReferenceQueue<Object> queue){
+            this.data = new DataReference(data, queue, this);
+            this.dataHash = System.identityHashCode(data);
+            this.extra = extra;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if (o == this){
+                return true;
+            }
+            if (!(o instanceof Key)){
+                return false;
+            }
+            Key other = (Key) o;
+            Object value = data.get();
+            return value != null && value == other.data.get() && extra == other.extra
+                    && Double.compare(width, other.width) == 0 && Double.compare(height, other.height) == 0;
+        }
+
+        @Override
+        public int hashCode(){
+            int hash = dataHash;
+            hash = 31 * hash + System.identityHashCode(extra);
+            hash = 31 * hash + Double.hashCode(width);
+            return 31 * hash + Double.hashCode(height);
+        }
+    }
+
+    //    The weak reference to the data of a key, it knows its key so the key can be removed
+    static final class DataReference extends WeakReference<Object> {
+        final Key key;
+
+        DataReference(Object data, ReferenceQueue<Object> queue, Key key){
+            super(data, queue);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import jdk.jfr.*;
+
+/**
+ SankeyMetrics records how long each phase of one diagram takes
+ LOAD is reading the file, LAYOUT is computing a SankeyLayout, BUILD is paint creating the nodes,
+ APPLY is moving the nodes to a layout and PULSE is the time between two JavaFX pulses
+ Every phase keeps its count, last, average and longest time, with the number of nodes and the paints per second
+ Each phase is also sent as a JFR event 'sankey.Phase', so a flight recording shows them next to GC and the JIT
+ The numbers can be written as JSON or CSV, for example to compare two versions on the same file
+ */
+public class SankeyMetrics {
+    public enum Phase {LOAD, LAYOUT, BUILD, APPLY, PULSE}
+
+    final String name;
+    final long[] count = new long[Phase.values().length];
+    final long[] last = new long[Phase.values().length];
+    final long[] total = new long[Phase.values().length];
+    final long[] longest = new long[Phase.values().length];
+    int nodes;
+    int rebuildsPerSecond;
+    int relayoutsPerSecond;
+
+    public SankeyMetrics(String name){
+        this.name = name;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    //    Record one run of a phase, it can be called from any thread
+    public void record(Phase phase, long nanos){
+        synchronized (this){
+            int i = phase.ordinal();
+            count[i]++;
+            last[i] = nanos;
+            total[i] += nanos;
+            longest[i] = Math.max(longest[i], nanos);
+        }
+        PhaseEvent event = new PhaseEvent();
+        if (event.shouldCommit()){
+            event.diagram = name;
+            event.phase = phase.name();
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+    public synchronized void setNodes(int nodes){
+        this.nodes = nodes;
+    }
+
+    public synchronized void setRates(int rebuildsPerSecond, int relayoutsPerSecond){
+        this.rebuildsPerSecond = rebuildsPerSecond;
+        this.relayoutsPerSecond = relayoutsPerSecond;
+    }
+
+    public synchronized long getCount(Phase phase){
+        return count[phase.ordinal()];
+    }
+
+    //    The times in milliseconds, 0 when the phase has not run
+    public synchronized double lastMillis(Phase phase){
+        return last[phase.ordinal()] / 1e6;
+    }
+
+    public synchronized double averageMillis(Phase phase){
+        int i = phase.ordinal();
+        return count[i] == 0 ? 0 : total[i] / 1e6 / count[i];
+    }
+
+    public synchronized double longestMillis(Phase phase){
+        return longest[phase.ordinal()] / 1e6;
+    }
+
+    //    A few lines for the overlay of the diagram window
+    public synchronized String toText(){
+        StringBuilder text = new StringBuilder();
+        for (Phase phase : Phase.values()){
+            text.append(String.format("%-7s %8.2f ms  avg %8.2f  max %8.2f  x%d%n", phase.name().toLowerCase(),
+                    lastMillis(phase), averageMillis(phase), longestMillis(phase), getCount(phase)));
+        }
+        double pulse = averageMillis(Phase.PULSE);
+        text.append(String.format("nodes %d, %d paints/s, %d relayouts/s, %.0f fps", nodes, rebuildsPerSecond,
+                relayoutsPerSecond, pulse > 0 ? 1000 / pulse : 0.0));
+        return text.toString();
+    }
+
+    public synchronized String toJson(){
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"diagram\": \"").append(escapeJson(name)).append("\",\n");
+        json.append("  \"nodes\": ").append(nodes).append(",\n");
+        json.append("  \"paintsPerSecond\": ").append(rebuildsPerSecond).append(",\n");
+        json.append("  \"relayoutsPerSecond\": ").append(relayoutsPerSecond).append(",\n");
+        json.append("  \"phases\": {");
+        for (Phase phase : Phase.values()){
+            json.append(phase.ordinal() == 0 ? "\n" : ",\n");
+            json.append(String.format(Locale.ROOT, "    \"%s\": {\"count\": %d, \"lastMs\": %.3f, \"avgMs\": %.3f, \"maxMs\": %.3f}",
+                    phase.name(), getCount(phase), lastMillis(phase), averageMillis(phase), longestMillis(phase)));
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    public synchronized String toCsv(){
+        StringBuilder csv = new StringBuilder("diagram,phase,count,last_ms,avg_ms,max_ms,nodes,paints_per_second,relayouts_per_second\n");
+        for (Phase phase : Phase.values()){
+            csv.append(String.format(Locale.ROOT, "\"%s\",%s,%d,%.3f,%.3f,%.3f,%d,%d,%d%n", name.replace("\"", "\"\""),
+                    phase.name(), getCount(phase), lastMillis(phase), averageMillis(phase), longestMillis(phase),
+                    nodes, rebuildsPerSecond, relayoutsPerSecond));
+        }
+        return csv.toString();
+    }
+
+    //    Write the numbers as CSV when the file name ends with '.csv', otherwise as JSON
+    public void write(Path path) throws IOException{
+        String text = path.toString().endsWith(".csv") ? toCsv() : toJson();
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String escapeJson(String text){
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\'){
+                escaped.append('\\').append(c);
+            }
+            else if (c < ' '){
+                escaped.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    //    The JFR event of one phase, it costs nothing when no recording is running
+    @Name("sankey.Phase")
+    @Label("Sankey Phase")
+    @Category("Sankey")
+    static class PhaseEvent extends Event {
+        @Label("Diagram")
+        String diagram;
+        @Label("Phase")
+        String phase;
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ SankeyPalette is a fixed table of colors and a rule for giving them to the branches
+ REGULAR, RANDOM and UNIT are the three color types of the launcher, they share one table
+ More palettes can be loaded from '.palette' files, one color per line
+ Colors are kept as 0xRRGGBB numbers so that exports can use them without JavaFX
+ assign is called once for a dataset, it gives every rectangle and branch its color
+ */
+public class SankeyPalette {
+    //For beauty, here are some colors chosen for the diagrams
+    //The first one is always the color of the left rectangle
+    static final int[] BASE_COLORS = {
+            0x68A7D2, 0xC356FF, 0xE4B0FF, 0xC1D7EC, 0xCDD9E1, 0xE0501C, 0xF1AD8C, 0xFA853F,
+            0xFDC7A3, 0xFCA767, 0xFDD7B7, 0xFCCC9C, 0x8AEA87, 0xA8FEAB, 0xC4FE9D, 0xE0FD8E,
+            0xFCFC7F, 0x2F9969, 0x52B785, 0x8AD4AC, 0xC0F1D3, 0x23965D, 0x43BB73, 0x81D5A2,
+            0xC1E7CD, 0x4D982E, 0x70B643, 0xA2D370, 0xC1E7CD, 0x617C52, 0x889F64, 0xB0C277,
+            0xD7E589, 0x1B4242, 0x5C8374, 0x9EC8B9, 0xB5E6D4, 0x85656D, 0xAC8C93, 0xB8ADAF,
+            0xD1C5C6, 0xA24F47, 0xBD968F, 0xECCAB7, 0xC9BCB9, 0x8C85A9, 0xB29EBC, 0xD6B9D0,
+            0xF8D6E5, 0x91A3BB, 0xA0C1D4, 0xB4CFE2, 0xDAD8E5, 0x3C79B4, 0x78A3CC, 0xB3CDE4,
+            0xEEF7FC, 0x3163EB, 0x5882F8, 0x84A1F9, 0xADBFFB, 0xA97C26, 0xD29C2F, 0xF2BE38,
+            0xF5DF7A, 0xC65323, 0xE96B3D, 0xF9885E, 0xFAB590, 0xD0241C, 0xF54D40, 0xF9877D,
+            0xF7B3AC, 0xD98777, 0xE3A995, 0xECCAB7, 0xF7EBDB, 0xAE4AD9, 0xD664F8, 0xE48CF9,
+            0xF0B5FF, 0xFF007D, 0xFF529A, 0xFF7AAD, 0xFFA3C3
+    };
+
+    //REGULAR shows the branches in the table order
+    public static final SankeyPalette REGULAR = new SankeyPalette("REGULAR", BASE_COLORS, Rule.REGULAR);
+    //RANDOM takes a random group of colors from the table
+    public static final SankeyPalette RANDOM = new SankeyPalette("RANDOM", BASE_COLORS, Rule.RANDOM);
+    //UNIT shows every branch in one random color
+    public static final SankeyPalette UNIT = new SankeyPalette("UNIT", BASE_COLORS, Rule.UNIT);
+
+    //the extension of palette files
+    static final String EXTENSION = ".palette";
+
+    //    How the colors of the table are given to the branches
+    enum Rule {
+        REGULAR,
+        RANDOM,
+        UNIT
+    }
+
+    final String name;
+    final int[] colors;
+    final Rule rule;
+
+    SankeyPalette(String name, int[] colors, Rule rule){
+        this.name = name;
+        this.colors = colors;
+        this.rule = rule;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    //    Find a palette by the name typed in the launcher
+    //    A name that is not a color type is looked for as a '.palette' file in the project folder, and only there
+    //    If the user input wrong color type will be viewed as REGULAR
+    public static SankeyPalette forName(String name){
+        switch (name){
+            case "REGULAR":
+                return REGULAR;
+            case "RANDOM":
+                return RANDOM;
+            case "UNIT":
+                return UNIT;
+            default:
+                Path file = fileOf(Paths.get(System.getProperty("user.dir")), name);
+                if (file != null && Files.isRegularFile(file)){
+                    try {
+                        return load(file);
+                    }
+                    catch (IOException ioe){
+                        System.out.println(ioe.getMessage());
+                    }
+                }
+                return REGULAR;
+        }
+    }
+
+    //    The '.palette' file of a name right in dir, null for names like '../x', '/tmp/x' or '.hidden'
+    static Path fileOf(Path dir, String name){
+        if (name.isEmpty() || name.startsWith(".") || name.indexOf('/') >= 0
+                || name.indexOf('\\') >= 0 || name.indexOf('\0') >= 0){
+            return null;
+        }
+        try {
+            Path file = dir.resolve(name + EXTENSION);
+            return dir.equals(file.getParent()) ? file : null;
+        }
+        catch (InvalidPathException ipe){
+            return null;
+        }
+    }
+
+    //    Names of the palette files in a folder, without the extension
+    public static List<String> available(Path dir){
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + EXTENSION)){
+            for (Path file : files){
+                String fileName = file.getFileName().toString();
+                names.add(fileName.substring(0, fileName.length() - EXTENSION.length()));
+            }
+        }
+        catch (IOException ioe){
+            System.out.println(ioe.getMessage());
+        }
+        return names;
+    }
+
+    //    Load a palette file, the colors are used in the REGULAR way
+    //    Every line is a color such as #68A7D2 or 104 167 210, empty lines and lines starting with // are skipped
+    public static SankeyPalette load(Path file) throws IOException{
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        int[] colors = new int[lines.size()];
+        int count = 0;
+        for (int i = 0; i < lines.size(); i++){
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("//")){
+                continue;
+            }
+            try {
+                colors[count++] = parseColor(line);
+            }
+            catch (NumberFormatException nfe){
+                throw new IOException(file.getFileName() + " (line " + (i + 1) + "): \"" + line + "\" is not a color");
+            }
+        }
+        if (count == 0){
+            throw new IOException(file.getFileName() + ": the palette has no colors");
+        }
+        String fileName = file.getFileName().toString();
+        String name = fileName.endsWith(EXTENSION) ? fileName.substring(0, fileName.length() - EXTENSION.length()) : fileName;
+        return new SankeyPalette(name, Arrays.copyOf(colors, count), Rule.REGULAR);
+    }
+
+    static int parseColor(String text){
+        String[] parts = text.split("[\\s,]+");
+        if (parts.length == 3){
+            int r = Integer.parseInt(parts[0]);
+            int g = Integer.parseInt(parts[1]);
+            int b = Integer.parseInt(parts[2]);
+            if ((r | g | b) < 0 || r > 255 || g > 255 || b > 255){
+                throw new NumberFormatException(text);
+            }
+            return (r << 16) | (g << 8) | b;
+        }
+        String hex = text.startsWith("#") ? text.substring(1) : text;
+        if (hex.length() != 6){
+            throw new NumberFormatException(text);
+        }
+        return Integer.parseInt(hex, 16);
+    }
+
+    //    Give colors to a diagram with this many branches
+    //    Branch i (from 1) takes colors 2i-1 for its rectangle and 2i for its branch, moved on by a group for RANDOM
+    //    When there are more branches than colors the table is used again from its second color
+    public Assignment assign(int branches, Random random){
+        int colorsNeed = branches * 2;
+        int usable = colors.length - 1;
+        int[] nodeColors = new int[branches + 1];
+        int[] bandColors = new int[branches + 1];
+        nodeColors[0] = colors[0];
+        bandColors[0] = colors[0];
+        if (branches == 0){
+//            Only the source is drawn, there is nothing to share the colors between
+            return new Assignment(nodeColors, bandColors);
+        }
+
+        int offset = 0;
+        int unit = -1;
+        if (rule == Rule.RANDOM && colorsNeed <= usable){
+            int groups = usable / colorsNeed;
+            offset = colorsNeed * random.nextInt(groups);
+        }
+        if (rule == Rule.UNIT){
+            int limit = colorsNeed <= usable ? usable / colorsNeed * colorsNeed : usable;
+            unit = 1 + random.nextInt(Math.max(limit, 1));
+        }
+
+        for (int i = 1; i <= branches; i++){
+            if (unit >= 0){
+                nodeColors[i] = color(unit);
+                bandColors[i] = color(unit);
+            }
+            else {
+                nodeColors[i] = color(2 * i - 1 + offset);
+                bandColors[i] = color(2 * i + offset);
+            }
+        }
+        return new Assignment(nodeColors, bandColors);
+    }
+
+    //    The color at an index, going round the table without the first color
+    int color(int index){
+        if (colors.length == 1){
+            return colors[0];
+        }
+        return colors[1 + (index - 1) % (colors.length - 1)];
+    }
+
+    //    The colors of one diagram, index 0 is the left rectangle, index i is array[i]
+    public static final class Assignment {
+        final int[] nodeColors;
+        final int[] bandColors;
+
+        Assignment(int[] nodeColors, int[] bandColors){
+            this.nodeColors = nodeColors;
+            this.bandColors = bandColors;
+        }
+
+        public int nodeColor(int series){
+            return nodeColors[series];
+        }
+
+        public int bandColor(int series){
+            return bandColors[series];
+        }
+    }
+}
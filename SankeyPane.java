@@ -0,0 +1,683 @@
+import java.util.*;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.Transition;
+import javafx.event.EventHandler;
+import javafx.geometry.VPos;
+import javafx.scene.Group;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.*;
+import javafx.scene.text.*;
+import javafx.util.Duration;
+
+class SankeyPane extends Pane{
+    //columns gets the labels and values that are drawn, label 0 is the source
+    SankeyColumns columns;
+    //mapSize counts how many labels are drawn
+    int mapSize;
+    //fullColumns is the whole file, columns may be a SankeyDetail of it with tiny branches merged
+    SankeyColumns fullColumns;
+    SankeyDetail detail;
+    //levelOfDetail merges the tiny branches, expanded is set when the merged branch was clicked
+    boolean levelOfDetail = !"false".equals(System.getProperty("sankey.lod"));
+    boolean expanded;
+    //graph is set for files with many levels, then the columns hold its node names and values
+    SankeyGraph graph;
+    //colorType gets the value of colorType
+    //value 1 means REGULAR(show Sankey diagram in the regular way)
+    //value -1 means RANDOM(show Sankey diagram in random colors)
+    //value 0 means UNIT(show Sankey diagram with branches in the same color)
+    //other palettes have no number, their colorType is 1
+    int colorType;
+    //palette gives the colors, they are chosen once in setPalette and not in every paint
+    SankeyPalette palette;
+    //nodeFills and bandFills are the colors of the rectangles and branches, indexes follow fullColumns
+    Color[] nodeFills;
+    Color[] bandFills;
+
+    //DEBUG prints the counters of paint and relayout when -Dsankey.debug=true
+    static final boolean DEBUG = Boolean.getBoolean("sankey.debug");
+    //nodesDirty means the nodes have to be created again before the next layout
+    boolean nodesDirty = true;
+    //paintedWidth and paintedHeight are the size of the layout the nodes were last placed for,
+    //paintedPanY is where the window was on it
+    double paintedWidth = -1;
+    double paintedHeight = -1;
+    double paintedPanY;
+
+    //zoom stretches the diagram down, the layout is made for the height of the pane times zoom
+    //panY is how far the window has moved down that taller layout, dragY is where the last drag event was
+    //-Dsankey.zoom.max is the most it can be stretched, one notch of the wheel zooms by ZOOM_STEP
+    static final double MAX_ZOOM = Double.parseDouble(System.getProperty("sankey.zoom.max", "64"));
+    static final double ZOOM_STEP = 1.25;
+    double zoom = 1;
+    double panY;
+    double dragY;
+
+    //currentLayout is the layout the nodes were last moved to
+    SankeyLayout currentLayout;
+    //animateChanges moves the nodes smoothly to new values in CHANGE_MILLIS, transition is the running move
+    static final double CHANGE_MILLIS = 400;
+    boolean animateChanges = true;
+    Transition transition;
+
+    //renderer chooses between a node for every shape and one SankeyCanvas, -Dsankey.renderer=nodes|canvas|auto
+    //AUTO draws on the canvas when a layout has more than CANVAS_THRESHOLD shapes, -Dsankey.canvas.threshold changes it
+    public enum Renderer {NODES, CANVAS, AUTO}
+    static final int CANVAS_THRESHOLD = Integer.getInteger("sankey.canvas.threshold", 2000);
+    Renderer renderer = rendererOf(System.getProperty("sankey.renderer", "auto"));
+    //canvas is set while the diagram is drawn on it, then the pools of nodes are empty
+    SankeyCanvas canvas;
+
+    //The pools of nodes for the shapes in the window, indexes follow the lists of the window of the layout
+    //Each kind has its own layer, the nodes left over are hidden and used again when the window moves
+    final List<Rectangle> rectangles = new ArrayList<>();
+    final List<Line> lines = new ArrayList<>();
+    final List<Path> bands = new ArrayList<>();
+    final List<Text> texts = new ArrayList<>();
+    Group rectangleLayer;
+    Group lineLayer;
+    Group bandLayer;
+    Group textLayer;
+    Font font;
+    final EventHandler<MouseEvent> expandClick = event -> {
+        if (event.isStillSincePress()){
+            expandOther();
+        }
+    };
+
+    //Counters for paint and relayout
+    int rebuildCount;
+    int relayoutCount;
+    int rebuildsThisSecond;
+    int relayoutsThisSecond;
+    int rebuildsPerSecond;
+    int relayoutsPerSecond;
+    long counterSecondStart = System.nanoTime();
+
+    //metrics times the phases of this diagram, metricsText shows them over the diagram when it is not null
+    //pulseTimer measures the time between pulses while metricsText is shown
+    SankeyMetrics metrics = new SankeyMetrics("diagram");
+    static final boolean SHOW_METRICS = Boolean.getBoolean("sankey.metrics");
+    static final long METRICS_REFRESH_NANOS = 250_000_000L;
+    Text metricsText;
+    AnimationTimer pulseTimer;
+
+    //    Here are the constructors, colorType is turned into a SankeyPalette
+    public SankeyPane(Map<String, Integer> map, String[] array) {
+        this(map, array, 1);
+    }
+    public SankeyPane(Map<String, Integer> map, String[] array, int colorType) {
+        fullColumns = SankeyColumns.of(map, array);
+        updateDetail(0);
+        setPalette(paletteOf(colorType));
+        installViewHandlers();
+    }
+    public SankeyPane(SankeyDataset dataset, int colorType) {
+        this(dataset, paletteOf(colorType));
+    }
+    //    Build the columns from a dataset loaded by SankeyDataset
+    //    A label that appears twice is one branch with the values added, see SankeyColumns.of
+    public SankeyPane(SankeyDataset dataset, SankeyPalette palette) {
+        metrics = new SankeyMetrics(dataset.getTitle());
+        readDataset(dataset);
+        setPalette(palette);
+        installViewHandlers();
+    }
+
+    //    The columns belong to the dataset, windows sharing a dataset from SankeyDatasetPool share them
+    void readDataset(SankeyDataset dataset){
+        readColumns(dataset.getGraph(), dataset.getColumns());
+    }
+
+    void readColumns(SankeyGraph newGraph, SankeyColumns newColumns){
+        graph = newGraph;
+        fullColumns = newColumns;
+        detail = null;
+        updateDetail(getHeight());
+    }
+
+    //    Choose the branches worth drawing at this height, true when they are not the ones drawn now
+    //    The same SankeyDetail is kept while nothing changes, so the layout cache still finds its layouts
+    //    A height of 0 means the pane has no size yet, then the last choice stays
+    //    This runs on every pulse, it is a binary search until the number of merged branches changes
+    boolean updateDetail(double height){
+        if (detail != null && height <= 0){
+            return false;
+        }
+        int merged = graph != null || !levelOfDetail || expanded
+                ? 0 : SankeyDetail.mergedAt(fullColumns, height * zoom, SankeyDetail.MIN_PIXELS);
+        if (detail != null && detail.source == fullColumns && detail.merged == merged){
+            return false;
+        }
+        SankeyDetail next = SankeyDetail.of(fullColumns, merged);
+        if (next.sameAs(detail)){
+            return false;
+        }
+        detail = next;
+        columns = next.columns;
+        mapSize = columns.size();
+        return true;
+    }
+
+    //    Show every branch of the merged branch, it stays expanded until setLevelOfDetail is called again
+    public void expandOther(){
+        expanded = true;
+        if (updateDetail(getHeight())){
+            markDirty();
+        }
+    }
+
+    //    Turn the merging of tiny branches on or off
+    public void setLevelOfDetail(boolean levelOfDetail){
+        this.levelOfDetail = levelOfDetail;
+        expanded = false;
+        if (updateDetail(getHeight())){
+            markDirty();
+        }
+    }
+
+    //    Show new data, for example after the file has been written again
+    //    When the branches are the same the existing nodes are moved, smoothly when animateChanges is on,
+    //    and only the texts whose values changed get new text
+    //    Otherwise the colors are chosen again and the nodes are created again on the next pulse
+    public void setDataset(SankeyDataset dataset){
+        showColumns(dataset.getGraph(), dataset.getColumns());
+    }
+
+    //    Show new single level data that was not read from a whole file, for example the running totals of SankeyTail
+    public void setColumns(SankeyColumns columns){
+        showColumns(null, columns);
+    }
+
+    void showColumns(SankeyGraph newGraph, SankeyColumns newColumns){
+        SankeyColumns oldColumns = columns;
+        SankeyGraph oldGraph = graph;
+        readColumns(newGraph, newColumns);
+        if (transition != null){
+            transition.stop();
+            transition = null;
+        }
+        boolean sameShape = graph == null ? oldGraph == null && columns.sameLabels(oldColumns) : graph.sameShape(oldGraph);
+        if (nodesDirty || currentLayout == null || !sameShape){
+            setPalette(palette);
+            return;
+        }
+        SankeyLayout from = currentLayout;
+        SankeyLayout to = layoutFor(getWidth(), getHeight());
+        countRelayout();
+        if (!animateChanges){
+            apply(to);
+            return;
+        }
+        transition = new Transition() {
+            {
+                setCycleDuration(Duration.millis(CHANGE_MILLIS));
+            }
+
+            @Override
+            protected void interpolate(double fraction) {
+                apply(SankeyLayout.interpolate(from, to, fraction));
+            }
+        };
+        transition.play();
+    }
+
+    public void setAnimateChanges(boolean animateChanges){
+        this.animateChanges = animateChanges;
+    }
+
+    static SankeyPalette paletteOf(int colorType){
+        if (colorType == -1){
+            return SankeyPalette.RANDOM;
+        }
+        if (colorType == 0){
+            return SankeyPalette.UNIT;
+        }
+        return SankeyPalette.REGULAR;
+    }
+
+    //    Choose the colors of every rectangle and branch once, paint only reads them
+    public void setPalette(SankeyPalette palette){
+        this.palette = palette;
+        colorType = palette == SankeyPalette.RANDOM ? -1 : palette == SankeyPalette.UNIT ? 0 : 1;
+        int size = fullColumns.size();
+        SankeyPalette.Assignment colors = palette.assign(size - 1, new Random());
+        nodeFills = new Color[size];
+        bandFills = new Color[size];
+        for (int i = 0; i < size; i++){
+            nodeFills[i] = toColor(colors.nodeColor(i));
+            bandFills[i] = toColor(colors.bandColor(i));
+        }
+        markDirty();
+    }
+
+    //    Compute the layout for a size ahead of time, it can run on any thread
+    public void prepareLayout(double width, double height){
+        updateDetail(height);
+        layoutFor(width, height);
+    }
+
+    //    The layout of the data for a pane of this size, it is zoom times as tall, a graph with many levels has its own layout
+    SankeyLayout layoutFor(double width, double height){
+        long start = System.nanoTime();
+        SankeyLayout layout = graph != null
+                ? SankeyGraphLayout.of(graph, width, height * zoom)
+                : SankeyLayout.of(columns, width, height * zoom);
+        metrics.record(SankeyMetrics.Phase.LAYOUT, System.nanoTime() - start);
+        return layout;
+    }
+
+    static Renderer rendererOf(String name){
+        try {
+            return Renderer.valueOf(name.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException iae){
+            return Renderer.AUTO;
+        }
+    }
+
+    //    Choose how this window draws, the diagram is created again on the next pulse
+    public void setRenderer(Renderer renderer){
+        this.renderer = renderer;
+        markDirty();
+    }
+
+    public Renderer getRenderer(){
+        return renderer;
+    }
+
+    //    Whether the diagram is drawn on a canvas now, with AUTO it depends on the size of the layout
+    public boolean isCanvas(){
+        return canvas != null;
+    }
+
+    boolean useCanvas(SankeyLayout layout){
+        if (renderer != Renderer.AUTO){
+            return renderer == Renderer.CANVAS;
+        }
+        int shapes = layout.nodes.size() + layout.bands.size() + layout.dividers.size() + layout.labels.size();
+        return shapes > CANVAS_THRESHOLD;
+    }
+
+    static Color toColor(int rgb){
+        return Color.rgb((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+
+//    Layout works in two steps so that resizing does not create the diagram again
+//    paint makes the layers or the canvas once for the data and colors, it only runs again when they change
+//    relayout moves the existing nodes to the SankeyLayout for the size of the pane
+//    layoutChildren runs at most once per pulse and calls relayout only when the size or the zoom has changed
+//    Only the shapes in the window get nodes, apply takes them from the pools and hides the ones left over
+
+    public void paint(){
+        getChildren().clear();
+        countRebuild();
+
+        // Initialization a font for beauty
+        font = Font.font("Arial", FontWeight.BOLD, 20.0);
+
+//        The layout at the current size tells how many shapes there are
+        SankeyLayout layout = layoutFor(getWidth(), getHeight());
+        long buildStart = System.nanoTime();
+
+        rectangles.clear();
+        lines.clear();
+        bands.clear();
+        texts.clear();
+        if (useCanvas(layout)){
+            paintCanvas();
+        }
+        else {
+            canvas = null;
+//            One layer for each kind keeps rectangles under the lines, the branches and the texts
+            rectangleLayer = new Group();
+            lineLayer = new Group();
+            bandLayer = new Group();
+            textLayer = new Group();
+            getChildren().addAll(rectangleLayer, lineLayer, bandLayer, textLayer);
+        }
+        if (metricsText != null){
+            getChildren().add(metricsText);
+        }
+
+        nodesDirty = false;
+        apply(layout);
+        metrics.record(SankeyMetrics.Phase.BUILD, System.nanoTime() - buildStart);
+    }
+
+    //    One canvas instead of the nodes, apply draws the shapes of the window on it
+    //    The merged branch is found by the hit index of the canvas, as the nodes find it with their own handlers
+    void paintCanvas(){
+        canvas = new SankeyCanvas(font);
+        canvas.setOnMouseMoved(event -> canvas.setCursor(isOther(event.getX(), event.getY())
+                ? javafx.scene.Cursor.HAND : javafx.scene.Cursor.DEFAULT));
+        canvas.setOnMouseClicked(event -> {
+            if (event.isStillSincePress() && isOther(event.getX(), event.getY())){
+                expandOther();
+            }
+        });
+        getChildren().add(canvas);
+    }
+
+    boolean isOther(double x, double y){
+        return detail.other >= 0 && canvas.seriesAt(x, y) == detail.other;
+    }
+
+    //    The merged branch opens when any of its parts is clicked, a drag to pan is not a click
+    void setExpander(javafx.scene.Node node, int series){
+        boolean other = detail.other >= 0 && series == detail.other;
+        node.setCursor(other ? javafx.scene.Cursor.HAND : null);
+        node.setOnMouseClicked(other ? expandClick : null);
+    }
+
+//    The method relayout moves the nodes to the layout for the size of the pane
+    public void relayout(){
+        countRelayout();
+        apply(layoutFor(getWidth(), getHeight()));
+    }
+
+//    Move the nodes to the part of the layout in the window, nodes are only created when the pools are too small
+    void apply(SankeyLayout layout){
+        long start = System.nanoTime();
+        currentLayout = layout;
+        double viewHeight = layout.height / zoom;
+        panY = Math.max(0, Math.min(panY, layout.height - viewHeight));
+        paintedWidth = layout.width;
+        paintedHeight = layout.height;
+        paintedPanY = panY;
+        SankeyLayout view = layout.window(panY, viewHeight);
+        if (canvas != null){
+            canvas.draw(view, detail.index, nodeFills, bandFills);
+            metrics.setNodes(getChildren().size());
+        }
+        else {
+            bind(view);
+            metrics.setNodes(view.nodes.size() + view.dividers.size() + view.bands.size() + view.labels.size());
+        }
+        metrics.record(SankeyMetrics.Phase.APPLY, System.nanoTime() - start);
+    }
+
+    void bind(SankeyLayout view){
+        for (int i = 0; i < view.nodes.size(); i++){
+            SankeyLayout.Node node = view.nodes.get(i);
+            Rectangle rectangle = i < rectangles.size() ? rectangles.get(i) : add(rectangles, rectangleLayer, new Rectangle());
+            Color color = nodeFills[detail.index[node.series]];
+            rectangle.setStroke(color);
+            rectangle.setFill(color);
+            setRectangle(rectangle, node.x, node.y, node.width, node.height);
+            setExpander(rectangle, node.series);
+            rectangle.setVisible(true);
+        }
+        hide(rectangles, view.nodes.size());
+
+        for (int i = 0; i < view.dividers.size(); i++){
+            SankeyLayout.Divider divider = view.dividers.get(i);
+            Line line = i < lines.size() ? lines.get(i) : add(lines, lineLayer, new Line());
+            line.setStroke(Color.BLACK);
+            setLine(line, divider.startX, divider.startY, divider.endX, divider.endY);
+            line.setVisible(true);
+        }
+        hide(lines, view.dividers.size());
+
+        for (int i = 0; i < view.bands.size(); i++){
+            SankeyLayout.Band band = view.bands.get(i);
+            Path path = i < bands.size() ? bands.get(i) : add(bands, bandLayer, new Path());
+            path.setFill(bandFills[detail.index[band.series]]);
+            path.setStroke(null);
+            setBranchPath(path, band);
+            setExpander(path, band.series);
+            path.setVisible(true);
+        }
+        hide(bands, view.bands.size());
+
+        for (int i = 0; i < view.labels.size(); i++){
+            SankeyLayout.Label label = view.labels.get(i);
+            Text text = i < texts.size() ? texts.get(i) : add(texts, textLayer, newText());
+            if (!text.getText().equals(label.text)){
+                text.setText(label.text);
+            }
+            text.setX(label.startsAtX ? label.x : label.x - text.getLayoutBounds().getWidth());
+            text.setY(label.y);
+            setExpander(text, label.series);
+            text.setVisible(true);
+        }
+        hide(texts, view.labels.size());
+    }
+
+    Text newText(){
+        Text text = new Text();
+        text.setFill(Color.BLACK);
+        text.setFont(font);
+        text.setTextOrigin(VPos.CENTER);
+        return text;
+    }
+
+    static <T extends javafx.scene.Node> T add(List<T> pool, Group layer, T node){
+        pool.add(node);
+        layer.getChildren().add(node);
+        return node;
+    }
+
+    static void hide(List<? extends javafx.scene.Node> pool, int from){
+        for (int i = from; i < pool.size(); i++){
+            pool.get(i).setVisible(false);
+        }
+    }
+
+    //    Zoom by a factor, the point of the diagram at y in the window stays where it is
+    //    More zoom makes a taller layout, so tiny branches grow and may leave the merged branch
+    public void zoomAt(double factor, double y){
+        double next = Math.max(1, Math.min(MAX_ZOOM, zoom * factor));
+        if (next == zoom){
+            return;
+        }
+        panY = (panY + y) * next / zoom - y;
+        zoom = next;
+        if (transition != null){
+            transition.stop();
+            transition = null;
+        }
+        if (updateDetail(getHeight())){
+            nodesDirty = true;
+        }
+        requestLayout();
+    }
+
+    //    Scroll the window down the layout by dy pixels, or up when dy is negative
+    public void panBy(double dy){
+        panY += dy;
+        requestLayout();
+    }
+
+    //    Show the whole diagram again
+    public void resetView(){
+        zoomAt(1 / zoom, 0);
+        panY = 0;
+        requestLayout();
+    }
+
+    public double getZoom(){
+        return zoom;
+    }
+
+    public double getPanY(){
+        return panY;
+    }
+
+    //    The wheel zooms around the pointer and dragging moves the window
+    void installViewHandlers(){
+        setOnScroll(event -> zoomAt(Math.pow(ZOOM_STEP, event.getDeltaY() / 40), event.getY()));
+        setOnMousePressed(event -> dragY = event.getY());
+        setOnMouseDragged(event -> {
+            panBy(dragY - event.getY());
+            dragY = event.getY();
+        });
+    }
+
+    static void setRectangle(Rectangle rectangle, double x, double y, double width, double height){
+        rectangle.setX(x);
+        rectangle.setY(y);
+        rectangle.setWidth(width);
+        rectangle.setHeight(height);
+    }
+
+    static void setLine(Line line, double startX, double startY, double endX, double endY){
+        line.setStartX(startX);
+        line.setStartY(startY);
+        line.setEndX(endX);
+        line.setEndY(endY);
+    }
+
+    //    Set the shape of a branch: the upper curve from left to right, down the branch rectangle,
+    //    and the lower curve back from right to left
+    static void setBranchPath(Path path, SankeyLayout.Band band){
+        double bottom0 = band.y0 + band.thickness;
+        double bottom1 = band.y1 + band.thickness;
+        path.getElements().setAll(
+                new MoveTo(band.x0, band.y0),
+                new CubicCurveTo(band.controlX0(), band.y0, band.controlX1(), band.y1, band.x1, band.y1),
+                new LineTo(band.x1, bottom1),
+                new CubicCurveTo(band.controlX1(), bottom1, band.controlX0(), bottom0, band.x0, bottom0),
+                new ClosePath());
+    }
+
+    //    Replaces the old setWidth and setHeight overrides, which painted the whole diagram on every call
+    //    Resizing only marks the layout, so a window drag costs one relayout per pulse
+    @Override
+    protected void layoutChildren(){
+//        A new height may merge or split branches, then the nodes are created again
+        if (updateDetail(getHeight())){
+            if (transition != null){
+                transition.stop();
+                transition = null;
+            }
+            nodesDirty = true;
+        }
+        if (nodesDirty){
+            paint();
+        }
+        else if (getWidth() != paintedWidth || getHeight() * zoom != paintedHeight){
+//            A new size ends a running move, the nodes go straight to the new layout
+            if (transition != null){
+                transition.stop();
+                transition = null;
+            }
+            relayout();
+        }
+        else if (panY != paintedPanY){
+//            Panning keeps the layout, only the window on it moves
+            apply(currentLayout);
+        }
+        super.layoutChildren();
+    }
+
+    //    Ask for the nodes to be created again on the next pulse, for example after the data changed
+    public void markDirty(){
+        nodesDirty = true;
+        requestLayout();
+    }
+
+    //    Count how many times paint and relayout run in the current second
+    //    With -Dsankey.debug=true the numbers are printed once per second
+    void countRebuild(){
+        rollCounters();
+        rebuildCount++;
+        rebuildsThisSecond++;
+    }
+
+    void countRelayout(){
+        rollCounters();
+        relayoutCount++;
+        relayoutsThisSecond++;
+    }
+
+    void rollCounters(){
+        long now = System.nanoTime();
+        if (now - counterSecondStart >= 1_000_000_000L){
+            if (DEBUG && (rebuildsThisSecond > 0 || relayoutsThisSecond > 0)){
+                System.out.println("SankeyPane: " + rebuildsThisSecond + " rebuilds/s, " + relayoutsThisSecond + " relayouts/s");
+            }
+            rebuildsPerSecond = rebuildsThisSecond;
+            relayoutsPerSecond = relayoutsThisSecond;
+            metrics.setRates(rebuildsPerSecond, relayoutsPerSecond);
+            rebuildsThisSecond = 0;
+            relayoutsThisSecond = 0;
+            counterSecondStart = now;
+        }
+    }
+
+    public int getRebuildCount(){
+        return rebuildCount;
+    }
+
+    public int getRelayoutCount(){
+        return relayoutCount;
+    }
+
+    //    The numbers of the last complete second
+    public int getRebuildsPerSecond(){
+        rollCounters();
+        return rebuildsPerSecond;
+    }
+
+    public int getRelayoutsPerSecond(){
+        rollCounters();
+        return relayoutsPerSecond;
+    }
+
+    public SankeyMetrics getMetrics(){
+        return metrics;
+    }
+
+    //    Use the metrics that already hold the load time of this diagram
+    public void setMetrics(SankeyMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    public boolean isShowMetrics(){
+        return metricsText != null;
+    }
+
+    //    Show or hide the times of every phase in the top left corner, they are refreshed four times a second
+    //    While they are shown an AnimationTimer runs on every pulse to measure the time between pulses
+    public void setShowMetrics(boolean show){
+        if (show == (metricsText != null)){
+            return;
+        }
+        if (!show){
+            pulseTimer.stop();
+            pulseTimer = null;
+            getChildren().remove(metricsText);
+            metricsText = null;
+            return;
+        }
+        metricsText = new Text(8, 8, metrics.toText());
+        metricsText.setFont(Font.font("Monospaced", 12));
+        metricsText.setFill(Color.DIMGRAY);
+        metricsText.setTextOrigin(VPos.TOP);
+        metricsText.setMouseTransparent(true);
+        getChildren().add(metricsText);
+        pulseTimer = new AnimationTimer() {
+            long lastPulse;
+            long lastShown;
+
+            @Override
+            public void handle(long now) {
+                if (lastPulse != 0){
+                    metrics.record(SankeyMetrics.Phase.PULSE, now - lastPulse);
+                }
+                lastPulse = now;
+                if (now - lastShown >= METRICS_REFRESH_NANOS){
+                    lastShown = now;
+                    rollCounters();
+                    metricsText.setText(metrics.toText());
+                    metricsText.toFront();
+                }
+            }
+        };
+        pulseTimer.start();
+    }
+}
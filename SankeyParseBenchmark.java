@@ -0,0 +1,95 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ SankeyParseBenchmark compares the ways of reading an input file
+ SCANNER is what showSankeyDiagrams used to do: getTitle, getValue twice and getOrder
+ BUFFERED is SankeyDataset.loadBuffered, MAPPED is MappedSankeyDataset.load and PARALLEL is ParallelSankeyParser.load
+ It follows the JMH pattern of warmup rounds, measured rounds and a consumed result
+ Time per load and bytes allocated per load are printed for every mode
+ The bytes are those of every thread, PARALLEL allocates on its worker threads and not on the one that waits
+ Usage: java SankeyParseBenchmark [rows] [warmup rounds] [measured rounds]
+ */
+public class SankeyParseBenchmark {
+    //sink keeps the results alive so the JIT can not remove the work
+    static long sink;
+
+    public static void main(String[] args) throws Exception{
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        Path file = Files.createTempFile("sankey-benchmark", ".txt");
+        try {
+            writeDataset(file, rows);
+            System.out.println("File: " + rows + " rows, " + Files.size(file) / 1024 + " KB");
+            for (String mode : new String[]{"SCANNER", "BUFFERED", "MAPPED", "PARALLEL"}){
+                run(mode, file, warmup, rounds);
+            }
+            System.out.println("(sink " + sink + ")");
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    //    Write a synthetic dataset with unique labels made of two words
+    static void writeDataset(Path file, int rows) throws IOException{
+        SankeyDataGenerator.writeRows(file, rows, SankeyDataGenerator.SEED);
+    }
+
+    static void run(String mode, Path file, int warmup, int rounds) throws IOException{
+        for (int i = 0; i < warmup; i++){
+            sink += load(mode, file);
+        }
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++){
+            sink += load(mode, file);
+        }
+        long time = System.nanoTime() - start;
+        long bytes = allocatedBytes() - bytesBefore;
+        System.out.printf("%-9s %10.2f ms/load %12d KB allocated/load%n",
+                mode, time / 1e6 / rounds, bytes / 1024 / rounds);
+    }
+
+    //    The bytes allocated so far by all live threads, worker pools and the FX thread included
+    //    The pools keep their threads, a thread that ends during a measurement would take its bytes along
+    static long allocatedBytes(){
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())){
+//            -1 is a thread that ended after the ids were taken
+            if (bytes > 0){
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    //    Load the file in one mode and touch every label the way the diagram does
+    static long load(String mode, Path file) throws IOException{
+        String fileName = file.toString();
+        long checksum = 0;
+        if (mode.equals("SCANNER")){
+            String title = SankeyDiagrams.getTitle(fileName);
+            Map<String, Integer> map = SankeyDiagrams.getValue(fileName);
+            int mapSize = SankeyDiagrams.getValue(fileName).size();
+            String[] array = SankeyDiagrams.getOrder(fileName, mapSize);
+            checksum += title.length();
+            for (String label : array){
+                checksum += label.length() + map.get(label);
+            }
+            return checksum;
+        }
+        SankeyDataset dataset = mode.equals("MAPPED") ? MappedSankeyDataset.load(file)
+                : mode.equals("PARALLEL") ? ParallelSankeyParser.load(file) : SankeyDataset.loadBuffered(file);
+        checksum += dataset.getTitle().length() + dataset.getSource().length() + dataset.getTotal();
+        for (int i = 0; i < dataset.size(); i++){
+            checksum += dataset.getLabel(i).length() + dataset.getValue(i);
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,95 @@
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import javax.imageio.ImageIO;
+
+/**
+ SankeyPngExport takes a snapshot of a SankeyPane and writes it as a PNG file
+ The data is read and laid out on the calling thread, only the snapshot runs on the JavaFX Application Thread
+ JavaFX is started once without a window, on a machine without a screen run it with Monocle:
+ -Dglass.platform=Monocle -Dmonocle.platform=Headless -Dprism.order=sw
+ */
+public class SankeyPngExport {
+    static boolean started;
+    //failure is why JavaFX could not start, every later snapshot fails with it
+    static RuntimeException failure;
+
+    private SankeyPngExport(){
+    }
+
+    //    Start JavaFX for snapshots, closing the last window must not stop it
+    static synchronized void startFx(){
+        if (failure != null){
+            throw new IllegalStateException(failure.getMessage(), failure);
+        }
+        if (started){
+            return;
+        }
+        try {
+            Platform.startup(() -> {
+            });
+        }
+        catch (IllegalStateException alreadyStarted){
+//            The launcher has started it already
+        }
+        catch (RuntimeException re){
+//            A failed start leaves the toolkit half made, the next startup would only say it is already initialized
+            failure = re;
+            throw re;
+        }
+        Platform.setImplicitExit(false);
+        started = true;
+    }
+
+    public static void write(SankeyDataset dataset, SankeyPalette palette, double width, double height, Path path)
+            throws IOException, InterruptedException{
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))){
+            write(dataset, palette, width, height, out);
+        }
+    }
+
+    //    Write the PNG to a stream, the render server sends it without a file
+    public static void write(SankeyDataset dataset, SankeyPalette palette, double width, double height, OutputStream out)
+            throws IOException, InterruptedException{
+        startFx();
+        SankeyPane sankeyPane = new SankeyPane(dataset, palette);
+        sankeyPane.setAnimateChanges(false);
+        sankeyPane.prepareLayout(width, height);
+
+        CompletableFuture<WritableImage> snapshot = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                Scene scene = new Scene(sankeyPane, width, height);
+                snapshot.complete(scene.snapshot(null));
+            }
+            catch (Throwable t){
+                snapshot.completeExceptionally(t);
+            }
+        });
+        WritableImage image;
+        try {
+            image = snapshot.get();
+        }
+        catch (ExecutionException ee){
+            throw new IOException("Snapshot failed: " + ee.getCause(), ee.getCause());
+        }
+
+//        Copy the pixels into an AWT image, ImageIO encodes it without the javafx.swing module
+        int w = (int) image.getWidth();
+        int h = (int) image.getHeight();
+        int[] pixels = new int[w * h];
+        image.getPixelReader().getPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+        BufferedImage buffered = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        buffered.setRGB(0, 0, w, h, pixels, 0, w);
+        if (!ImageIO.write(buffered, "png", out)){
+            throw new IOException("No PNG writer");
+        }
+    }
+}
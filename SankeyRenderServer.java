@@ -0,0 +1,409 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.sun.net.httpserver.*;
+
+/**
+ SankeyRenderServer draws Sankey diagrams over HTTP for other programs on this machine, no window is opened
+ GET /render/{file}?colorType=RANDOM&w=800&h=600&format=svg answers with the diagram of {file}.txt in its folder
+ The files are read through SankeyDatasetPool, just like in the launcher
+ colorType is REGULAR, RANDOM, UNIT or the name of a '.palette' file in the served folder, anything else is refused
+ SVG is written by SankeySvg without JavaFX, only PNG takes a snapshot on the JavaFX Application Thread
+ A PNG holds every pixel several times while it is encoded, so its area is limited and only a few are drawn at once
+ Every request runs as its own task of SankeyExecutors, that is a virtual thread on Java 21 and later
+ An answer is kept by the version of the file and the parameters, its ETag is made from the same things
+ A client that sends the ETag back in If-None-Match gets 304 without the file being read again
+ The server only listens on the loopback address
+ Usage: java SankeyRenderServer [--port 8080] [--dir folder]
+ The launcher starts one next to its windows when it is run with -Dsankey.server.port=8080
+ */
+public class SankeyRenderServer {
+    static final String EXTENSION = ".txt";
+    static final String PREFIX = "/render/";
+    //the memory kept for answers, -Dsankey.server.cache in megabytes changes it
+    static final long CACHE_BYTES = Long.getLong("sankey.server.cache", 64) * 1024 * 1024;
+    //connections waiting to be accepted, hundreds of clients may connect at once
+    static final int BACKLOG = 1024;
+    //the largest width or height that is drawn
+    static final double MAX_SIZE = 10_000;
+    //the largest area of a PNG in pixels and how many PNGs are drawn at the same time,
+    //-Dsankey.server.png.pixels and -Dsankey.server.png.renders change them
+    static final long MAX_PNG_PIXELS = Long.getLong("sankey.server.png.pixels", 4_000_000);
+    static final int PNG_RENDERS = Integer.getInteger("sankey.server.png.renders", 2);
+    static final Set<String> COLOR_TYPES = Set.of("REGULAR", "RANDOM", "UNIT");
+
+    final Path root;
+    final HttpServer server;
+    final ExecutorService executor;
+    final SankeyDatasetPool pool = SankeyDatasetPool.shared();
+    //answers by key in order of the last use, cachedBytes is the size of all of them
+    final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    long cachedBytes;
+    //answers that are being drawn, a second request for the same key waits for the first one
+    final ConcurrentHashMap<String, CompletableFuture<byte[]>> drawing = new ConcurrentHashMap<>();
+    //the PNG requests past PNG_RENDERS wait here
+    final Semaphore pngRenders = new Semaphore(PNG_RENDERS);
+
+    SankeyRenderServer(Path root, int port) throws IOException{
+        this.root = root.toRealPath();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        executor = SankeyExecutors.newTaskExecutor("sankey-http");
+        server.setExecutor(executor);
+        server.createContext(PREFIX, this::handle);
+    }
+
+    public static void main(String[] args) throws IOException{
+        int port = 8080;
+        Path dir = Paths.get(System.getProperty("user.dir"));
+        for (int i = 0; i < args.length; i++){
+            if (args[i].equals("--port") && i + 1 < args.length){
+                port = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("--dir") && i + 1 < args.length){
+                dir = Paths.get(args[++i]);
+            }
+            else {
+                System.err.println("Usage: java SankeyRenderServer [--port 8080] [--dir folder]");
+                System.exit(2);
+            }
+        }
+        SankeyRenderServer server = start(port, dir);
+        System.out.println("Serving " + server.root + " on http://localhost:" + server.getPort() + PREFIX);
+    }
+
+    //    Start serving the '.txt' files of a folder, port 0 takes any free port
+    public static SankeyRenderServer start(int port, Path root) throws IOException{
+        SankeyRenderServer renderServer = new SankeyRenderServer(root, port);
+        renderServer.server.start();
+        return renderServer;
+    }
+
+    public int getPort(){
+        return server.getAddress().getPort();
+    }
+
+    //    Stop at once, requests that are still running are dropped
+    public void stop(){
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    void handle(HttpExchange exchange) throws IOException{
+        try {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")){
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendText(exchange, 405, "Only GET and HEAD are served");
+                return;
+            }
+            Request request;
+            try {
+                request = new Request(exchange.getRequestURI());
+                request.paletteFile = paletteFile(request.colorType);
+            }
+            catch (IllegalArgumentException iae){
+                sendText(exchange, 400, iae.getMessage());
+                return;
+            }
+            Path path = file(request.name);
+            if (path == null){
+                sendText(exchange, 404, request.name + ": This file does not exist!");
+                return;
+            }
+            String key = key(path, request);
+            if (key == null){
+                sendText(exchange, 404, request.name + ": This file does not exist!");
+                return;
+            }
+
+            String etag = etag(key);
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("ETag", etag);
+            headers.set("Cache-Control", "no-cache");
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") || Arrays.asList(ifNoneMatch.split("\\s*,\\s*")).contains(etag))){
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            byte[] body;
+            try {
+                body = answer(key, path, request);
+            }
+            catch (SankeyDataset.LoadException le){
+                int status = le.getReason() == SankeyDataset.Reason.NOT_FOUND ? 404
+                        : le.getReason() == SankeyDataset.Reason.CANCELLED ? 503 : 422;
+                headers.remove("ETag");
+                sendText(exchange, status, le.describe());
+                return;
+            }
+            catch (IOException | RuntimeException | Error e){
+//                PNG needs JavaFX, a machine without a screen or without the JavaFX classes can not draw it
+                headers.remove("ETag");
+                sendText(exchange, request.format.equals("png") ? 503 : 500, e instanceof Error ? e.toString() : String.valueOf(e.getMessage()));
+                return;
+            }
+            headers.set("Content-Type", request.format.equals("svg") ? "image/svg+xml; charset=utf-8" : "image/png");
+            if (method.equals("HEAD")){
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    //    The answer from the cache, or drawn once however many requests ask for it at the same time
+    byte[] answer(String key, Path path, Request request) throws IOException{
+        synchronized (cache){
+            byte[] cached = cache.get(key);
+            if (cached != null){
+                return cached;
+            }
+        }
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = drawing.putIfAbsent(key, mine);
+        if (running != null){
+            try {
+                return running.get();
+            }
+            catch (InterruptedException ie){
+                Thread.currentThread().interrupt();
+                throw new SankeyDataset.LoadException(SankeyDataset.Reason.CANCELLED, path, 0, "The request was cancelled");
+            }
+            catch (ExecutionException ee){
+                Throwable cause = ee.getCause();
+                if (cause instanceof IOException){
+                    throw (IOException) cause;
+                }
+                if (cause instanceof Error){
+                    throw (Error) cause;
+                }
+                throw (RuntimeException) cause;
+            }
+        }
+        try {
+            byte[] body = draw(path, request);
+//            The file may have changed while it was read, then the answer belongs to a newer key
+            if (key.equals(key(path, request))){
+                put(key, body);
+            }
+            mine.complete(body);
+            return body;
+        }
+        catch (Throwable t){
+//            Whatever went wrong, the requests waiting for this one must not wait forever
+            mine.completeExceptionally(t);
+            throw t;
+        }
+        finally {
+            drawing.remove(key, mine);
+        }
+    }
+
+    byte[] draw(Path path, Request request) throws IOException{
+        SankeyDatasetPool.Lease lease = pool.acquire(path, null);
+        try {
+            SankeyDataset dataset = lease.getDataset();
+            SankeyPalette palette;
+            try {
+                palette = request.paletteFile == null ? SankeyPalette.forName(request.colorType)
+                        : SankeyPalette.load(request.paletteFile);
+            }
+            catch (IOException ioe){
+                throw new SankeyDataset.LoadException(SankeyDataset.Reason.BAD_VALUE, request.paletteFile, 0, ioe.getMessage());
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (request.format.equals("svg")){
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                SankeySvg.of(dataset, palette, request.width, request.height, request.seed).write(writer);
+                writer.flush();
+            }
+            else {
+                try {
+                    pngRenders.acquire();
+                    try {
+                        SankeyPngExport.write(dataset, palette, request.width, request.height, out);
+                    }
+                    finally {
+                        pngRenders.release();
+                    }
+                }
+                catch (InterruptedException ie){
+                    Thread.currentThread().interrupt();
+                    throw new SankeyDataset.LoadException(SankeyDataset.Reason.CANCELLED, path, 0, "The request was cancelled");
+                }
+            }
+            return out.toByteArray();
+        }
+        finally {
+            lease.release();
+        }
+    }
+
+    //    Keep an answer, the least recently used ones are dropped when the cache is full
+    void put(String key, byte[] body){
+        synchronized (cache){
+            byte[] old = cache.put(key, body);
+            cachedBytes += body.length - (old == null ? 0 : old.length);
+            Iterator<byte[]> iterator = cache.values().iterator();
+            while (cachedBytes > CACHE_BYTES && iterator.hasNext()){
+                cachedBytes -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    //    The file of a name inside the folder, names like '../secret' or '/etc/passwd' give null
+    Path file(String name){
+        if (name.isEmpty() || name.indexOf('\0') >= 0){
+            return null;
+        }
+        if (!name.endsWith(EXTENSION)){
+            name += EXTENSION;
+        }
+        try {
+            Path path = root.resolve(name).normalize();
+            if (!path.startsWith(root) || !Files.isRegularFile(path) || !path.toRealPath().startsWith(root)){
+                return null;
+            }
+            return path;
+        }
+        catch (InvalidPathException | IOException e){
+            return null;
+        }
+    }
+
+    //    The palette file of a color type, null for the three built in ones
+    //    Only a '.palette' file right in the served folder is taken, names like '../x' are refused
+    Path paletteFile(String colorType){
+        if (COLOR_TYPES.contains(colorType)){
+            return null;
+        }
+        Path file = SankeyPalette.fileOf(root, colorType);
+        try {
+            if (file != null && Files.isRegularFile(file) && file.toRealPath().startsWith(root)){
+                return file;
+            }
+        }
+        catch (IOException ioe){
+//            Not a palette of this folder either
+        }
+        throw new IllegalArgumentException("Unknown colorType " + colorType + ", use REGULAR, RANDOM, UNIT or a palette of the folder");
+    }
+
+    //    The version of the file and everything that changes the picture, null when the file is gone
+    String key(Path path, Request request){
+        try {
+            StringBuilder key = new StringBuilder();
+            key.append(path).append('\n').append(Files.size(path)).append('\n')
+                    .append(Files.getLastModifiedTime(path).toMillis()).append('\n')
+                    .append(request.colorType).append('\n');
+//            A palette file can be edited as well
+            if (request.paletteFile != null){
+                key.append(Files.getLastModifiedTime(request.paletteFile).toMillis());
+            }
+            key.append('\n').append(request.width).append('x').append(request.height).append('\n')
+                    .append(request.format).append('\n').append(request.seed);
+            return key.toString();
+        }
+        catch (IOException ioe){
+            return null;
+        }
+    }
+
+    //    A strong ETag made from the key with 64 bit FNV-1a
+    static String etag(String key){
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++){
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    static void sendText(HttpExchange exchange, int status, String text) throws IOException{
+        byte[] body = (text + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        if (exchange.getRequestMethod().equals("HEAD")){
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    //    The file name and the parameters of one request, with the defaults of the launcher
+    static final class Request {
+        final String name;
+        String colorType = "REGULAR";
+        //the '.palette' file of colorType in the served folder, null for the built in color types
+        Path paletteFile;
+        double width = SankeyDiagrams.DIAGRAM_WIDTH;
+        double height = SankeyDiagrams.DIAGRAM_HEIGHT;
+        String format = "svg";
+        long seed;
+
+        Request(URI uri){
+            name = uri.getPath().substring(PREFIX.length());
+//            The seed comes from the name like in SankeyExport, so both draw a random palette the same way
+            String base = name.endsWith(EXTENSION) ? name.substring(0, name.length() - EXTENSION.length()) : name;
+            seed = base.substring(base.lastIndexOf('/') + 1).hashCode();
+            String query = uri.getRawQuery();
+            if (query == null){
+                return;
+            }
+            for (String parameter : query.split("&")){
+                int equals = parameter.indexOf('=');
+                String key = URLDecoder.decode(equals < 0 ? parameter : parameter.substring(0, equals), StandardCharsets.UTF_8);
+                String value = equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8);
+                switch (key){
+                    case "colorType": colorType = value; break;
+                    case "w": width = size(key, value); break;
+                    case "h": height = size(key, value); break;
+                    case "format": {
+                        format = value.toLowerCase(Locale.ROOT);
+                        if (!format.equals("svg") && !format.equals("png")){
+                            throw new IllegalArgumentException("format must be svg or png");
+                        }
+                        break;
+                    }
+                    case "seed": {
+                        try {
+                            seed = Long.parseLong(value);
+                        }
+                        catch (NumberFormatException nfe){
+                            throw new IllegalArgumentException("seed must be a whole number");
+                        }
+                        break;
+                    }
+                    default: throw new IllegalArgumentException("Unknown parameter " + key);
+                }
+            }
+            if (format.equals("png") && Math.ceil(width) * Math.ceil(height) > MAX_PNG_PIXELS){
+                throw new IllegalArgumentException("A PNG can have at most " + MAX_PNG_PIXELS + " pixels, ask for SVG or a smaller size");
+            }
+        }
+
+        static double size(String key, String value){
+            double size;
+            try {
+                size = Double.parseDouble(value);
+            }
+            catch (NumberFormatException nfe){
+                throw new IllegalArgumentException(key + " must be a number");
+            }
+            if (!(size >= 1 && size <= MAX_SIZE)){
+                throw new IllegalArgumentException(key + " must be between 1 and " + (int) MAX_SIZE);
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ SankeySvg writes a Sankey diagram as an SVG file without JavaFX
+ It draws the same SankeyLayout and the same colors as SankeyPane, in the same order:
+ rectangles, black lines, branches and then the texts
+ The colors are found the way SankeyPane finds them, through the SankeyDetail of the data
+ */
+public class SankeySvg {
+    static final String FONT = "font-family=\"Arial\" font-weight=\"bold\" font-size=\"20\"";
+
+    final SankeyLayout layout;
+    //nodeColors and bandColors are the colors by series of the layout, as 0xRRGGBB
+    final int[] nodeColors;
+    final int[] bandColors;
+
+    SankeySvg(SankeyLayout layout, int[] nodeColors, int[] bandColors){
+        this.layout = layout;
+        this.nodeColors = nodeColors;
+        this.bandColors = bandColors;
+    }
+
+    //    Lay out a dataset at a size and choose its colors, random palettes use the seed so a file always looks the same
+    public static SankeySvg of(SankeyDataset dataset, SankeyPalette palette, double width, double height, long seed){
+        SankeyLayout layout;
+        int[] index;
+        int size;
+        if (dataset.getGraph() != null){
+            layout = SankeyGraphLayout.of(dataset.getGraph(), width, height);
+            size = dataset.getGraph().nodeCount();
+            index = new int[size];
+            for (int i = 0; i < size; i++){
+                index[i] = i;
+            }
+        }
+        else {
+//            The columns are made once per dataset and the layouts come from the shared cache,
+//            so drawing the same file again does not add up its labels or lay it out again
+            SankeyColumns columns = dataset.getColumns();
+            SankeyDetail detail = SankeyDetail.of(columns, height, SankeyDetail.MIN_PIXELS);
+            layout = SankeyLayout.of(detail.columns, width, height);
+            size = columns.size();
+            index = detail.index;
+        }
+        SankeyPalette.Assignment colors = palette.assign(size - 1, new Random(seed));
+        int[] nodeColors = new int[index.length];
+        int[] bandColors = new int[index.length];
+        for (int i = 0; i < index.length; i++){
+            nodeColors[i] = colors.nodeColor(index[i]);
+            bandColors[i] = colors.bandColor(index[i]);
+        }
+        return new SankeySvg(layout, nodeColors, bandColors);
+    }
+
+    public void write(Path path) throws IOException{
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)){
+            write(writer);
+        }
+    }
+
+    public void write(Appendable out) throws IOException{
+        out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(number(layout.width))
+                .append("\" height=\"").append(number(layout.height))
+                .append("\" viewBox=\"0 0 ").append(number(layout.width)).append(' ').append(number(layout.height)).append("\">\n");
+        for (SankeyLayout.Node node : layout.nodes){
+            String color = color(nodeColors[node.series]);
+            out.append("<rect x=\"").append(number(node.x)).append("\" y=\"").append(number(node.y))
+                    .append("\" width=\"").append(number(node.width)).append("\" height=\"").append(number(node.height))
+                    .append("\" fill=\"").append(color).append("\" stroke=\"").append(color).append("\"/>\n");
+        }
+        for (SankeyLayout.Divider divider : layout.dividers){
+            out.append("<line x1=\"").append(number(divider.startX)).append("\" y1=\"").append(number(divider.startY))
+                    .append("\" x2=\"").append(number(divider.endX)).append("\" y2=\"").append(number(divider.endY))
+                    .append("\" stroke=\"#000000\"/>\n");
+        }
+        for (SankeyLayout.Band band : layout.bands){
+            double bottom0 = band.y0 + band.thickness;
+            double bottom1 = band.y1 + band.thickness;
+            out.append("<path d=\"M").append(number(band.x0)).append(' ').append(number(band.y0))
+                    .append(" C").append(number(band.controlX0())).append(' ').append(number(band.y0))
+                    .append(' ').append(number(band.controlX1())).append(' ').append(number(band.y1))
+                    .append(' ').append(number(band.x1)).append(' ').append(number(band.y1))
+                    .append(" L").append(number(band.x1)).append(' ').append(number(bottom1))
+                    .append(" C").append(number(band.controlX1())).append(' ').append(number(bottom1))
+                    .append(' ').append(number(band.controlX0())).append(' ').append(number(bottom0))
+                    .append(' ').append(number(band.x0)).append(' ').append(number(bottom0))
+                    .append(" Z\" fill=\"").append(color(bandColors[band.series])).append("\"/>\n");
+        }
+        for (SankeyLayout.Label label : layout.labels){
+            out.append("<text x=\"").append(number(label.x)).append("\" y=\"").append(number(label.y))
+                    .append("\" text-anchor=\"").append(label.startsAtX ? "start" : "end")
+                    .append("\" dominant-baseline=\"central\" ").append(FONT).append(">")
+                    .append(escape(label.text)).append("</text>\n");
+        }
+        out.append("</svg>\n");
+    }
+
+    //    Two decimals are more than a screen can show
+    static String number(double value){
+        long hundredths = Math.round(value * 100);
+        if (hundredths % 100 == 0){
+            return Long.toString(hundredths / 100);
+        }
+        return Double.toString(hundredths / 100.0);
+    }
+
+    static String color(int rgb){
+        return String.format("#%06x", rgb & 0xFFFFFF);
+    }
+
+    static String escape(String text){
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            switch (c){
+                case '<': escaped.append("&lt;"); break;
+                case '>': escaped.append("&gt;"); break;
+                case '&': escaped.append("&amp;"); break;
+                case '"': escaped.append("&quot;"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
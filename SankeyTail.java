@@ -0,0 +1,186 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ SankeyTail follows a file that only grows, such as a log that gets new 'label value' lines at its end
+ It remembers the byte offset after the last complete line and each poll reads only what was added since
+ The values of a label are added together into running totals, so the work of a poll depends on the new lines
+ and not on the size of the whole file
+ A line that is still being written (no line break yet) waits for the next poll
+ When the file got shorter or its bytes before the offset changed, it was rewritten and is read again from the start
+ */
+public class SankeyTail {
+    static final int CHUNK_SIZE = 64 * 1024;
+    //how many bytes before the offset are compared to notice a rewritten file
+    static final int CHECK_BYTES = 64;
+
+    final Path path;
+    //offset is the byte after the last complete line read, lineNumber the number of that line
+    long offset;
+    int lineNumber;
+    String title;
+    String source;
+    //flowFile is set when the second line is a flow, such files are not tailed
+    boolean flowFile;
+    //labels and values of the branches in the order they first appeared, index finds a label
+    final Map<String, Integer> index = new HashMap<>();
+    String[] labels = new String[16];
+    long[] values = new long[16];
+    int size;
+    long total;
+    //the bytes just before offset when it was last read
+    byte[] check = new byte[0];
+    //a line can be longer than a chunk, its bytes are collected here
+    byte[] line = new byte[256];
+    int lineLength;
+
+    public SankeyTail(Path path){
+        this.path = path;
+    }
+
+    //    Read the lines added since the last poll, true when anything changed
+    public synchronized boolean poll() throws IOException{
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            long fileSize = channel.size();
+            boolean rewritten = fileSize < offset || !sameCheck(channel);
+            if (rewritten){
+                reset();
+            }
+            if (fileSize == offset || flowFile){
+                return rewritten;
+            }
+            long start = offset;
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            long position = offset;
+            lineLength = 0;
+            while (position < fileSize){
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0){
+                    break;
+                }
+                byte[] bytes = buffer.array();
+                for (int i = 0; i < read; i++){
+                    if (bytes[i] == '\n'){
+                        handle(new String(line, 0, lineLength, StandardCharsets.UTF_8));
+                        lineLength = 0;
+                        offset = position + i + 1;
+                    }
+                    else {
+                        if (lineLength == line.length){
+                            line = Arrays.copyOf(line, lineLength * 2);
+                        }
+                        line[lineLength++] = bytes[i];
+                    }
+                }
+                position += read;
+            }
+            rememberCheck(channel);
+            return rewritten || offset != start;
+        }
+    }
+
+    void handle(String text){
+        lineNumber++;
+        if (lineNumber == 1){
+            title = text.strip();
+            return;
+        }
+        if (lineNumber == 2){
+            source = text.strip();
+            flowFile = SankeyGraph.isFlow(text);
+            return;
+        }
+        if (flowFile){
+            return;
+        }
+        text = text.strip();
+        int space = text.lastIndexOf(' ');
+        if (text.isEmpty()){
+            return;
+        }
+        long value;
+        try {
+            value = space < 0 ? -1 : Long.parseLong(text.substring(space + 1));
+        }
+        catch (NumberFormatException nfe){
+            value = -1;
+        }
+        if (value < 0){
+//            One bad line of a log is skipped, the lines after it still count
+            System.out.println(path + ":" + lineNumber + ": skipped \"" + text + "\"");
+            return;
+        }
+        String label = text.substring(0, space);
+        Integer at = index.get(label);
+        if (at == null){
+            at = size;
+            index.put(label, at);
+            if (size == labels.length){
+                labels = Arrays.copyOf(labels, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            labels[size] = label;
+            size++;
+        }
+        values[at] += value;
+        total += value;
+    }
+
+    boolean sameCheck(FileChannel channel) throws IOException{
+        if (check.length == 0){
+            return true;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(check.length);
+        channel.read(buffer, offset - check.length);
+        return buffer.position() == check.length && Arrays.equals(buffer.array(), check);
+    }
+
+    void rememberCheck(FileChannel channel) throws IOException{
+        int length = (int) Math.min(CHECK_BYTES, offset);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        channel.read(buffer, offset - length);
+        check = buffer.array();
+    }
+
+    void reset(){
+        offset = 0;
+        lineNumber = 0;
+        title = null;
+        source = null;
+        flowFile = false;
+        index.clear();
+        Arrays.fill(values, 0, size, 0);
+        size = 0;
+        total = 0;
+        check = new byte[0];
+    }
+
+    public synchronized boolean isFlowFile(){
+        return flowFile;
+    }
+
+    //    Whether the title, the source and at least one branch have been read, before that there is nothing to draw
+    public synchronized boolean isReady(){
+        return source != null && size > 0;
+    }
+
+    public synchronized String getTitle(){
+        return title;
+    }
+
+    //    The running totals as columns for SankeyPane.setColumns, a copy that later polls do not change
+    public synchronized SankeyColumns snapshot(){
+        String[] columnLabels = new String[size + 1];
+        long[] columnValues = new long[size + 1];
+        columnLabels[0] = source;
+        columnValues[0] = total;
+        System.arraycopy(labels, 0, columnLabels, 1, size);
+        System.arraycopy(values, 0, columnValues, 1, size);
+        return new SankeyColumns(columnLabels, columnValues);
+    }
+}
@@ -0,0 +1,47 @@
+package sankey.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+/**
+ GraphLayoutBenchmark places a generated multi-level graph with SankeyGraphLayout,
+ on one thread and on the layout pool
+ shape is levels x nodes per level x flows, as in the layout group of SankeyBenchmarks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class GraphLayoutBenchmark {
+    @Param({"4x25x1000", "6x400x20000"})
+    String shape;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    Object graph;
+
+    @Setup(Level.Trial)
+    public void graph() throws Throwable{
+        String[] parts = shape.split("x");
+        Path file = Files.createTempFile("sankey-jmh", ".txt");
+        try {
+            Sankey.WRITE_GRAPH.invokeExact(file, Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                    Integer.parseInt(parts[2]), Sankey.SEED);
+            graph = (Object) Sankey.GRAPH.invokeExact(file);
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+        Sankey.SET_PARALLEL.invokeExact(parallel);
+    }
+
+    @Benchmark
+    public Object layout() throws Throwable{
+        return (Object) Sankey.GRAPH_LAYOUT.invokeExact(graph, 1200.0, 900.0);
+    }
+}
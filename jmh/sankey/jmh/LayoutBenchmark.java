@@ -0,0 +1,35 @@
+package sankey.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ LayoutBenchmark places a source and its branches with SankeyLayout from SankeyColumns,
+ the inputs are the ones of the layout group of SankeyBenchmarks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class LayoutBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    int branches;
+
+    Object columns;
+
+    @Setup(Level.Trial)
+    public void columns() throws Throwable{
+        Map<String, Integer> map = new HashMap<>();
+        String[] array = (String[]) Sankey.BRANCHES.invokeExact(branches, map);
+        columns = (Object) Sankey.COLUMNS.invokeExact(map, array);
+    }
+
+    @Benchmark
+    public Object layout() throws Throwable{
+        return (Object) Sankey.LAYOUT.invokeExact(columns, 600.0, 500.0);
+    }
+}
@@ -0,0 +1,43 @@
+package sankey.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+/**
+ ParseBenchmark reads a generated file in every way SankeyDataset can read it
+ and touches every label the way the diagram does, like the parse group of SankeyBenchmarks
+ Run with -prof gc for the bytes allocated per operation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class ParseBenchmark {
+    @Param({"1000", "100000"})
+    int rows;
+
+    @Param({"SCANNER", "BUFFERED", "MAPPED", "PARALLEL"})
+    String mode;
+
+    Path file;
+
+    @Setup(Level.Trial)
+    public void write() throws Throwable{
+        file = Files.createTempFile("sankey-jmh", ".txt");
+        Sankey.WRITE_ROWS.invokeExact(file, rows, Sankey.SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws Exception{
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long parse() throws Throwable{
+        return (long) Sankey.LOAD.invokeExact(mode, file);
+    }
+}
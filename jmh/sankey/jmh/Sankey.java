@@ -0,0 +1,77 @@
+package sankey.jmh;
+
+import java.lang.invoke.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ Sankey holds handles to the program, JMH needs its benchmarks in a package
+ and the program is in the default package, which a package can not import
+ The handles are static final, so the JIT treats them like direct calls
+ */
+final class Sankey {
+    //seed of SankeyDataGenerator, the same inputs as SankeyBenchmarks
+    static final long SEED;
+    //SankeyParseBenchmark.load(String mode, Path file) -> long
+    static final MethodHandle LOAD;
+    //SankeyDataGenerator.writeRows(Path file, int rows, long seed)
+    static final MethodHandle WRITE_ROWS;
+    //SankeyDataGenerator.writeGraph(Path file, int levels, int nodesPerLevel, int flows, long seed)
+    static final MethodHandle WRITE_GRAPH;
+    //SankeyBenchmarks.branches(int count, Map map) -> String[]
+    static final MethodHandle BRANCHES;
+    //SankeyColumns.of(Map map, String[] array) -> Object
+    static final MethodHandle COLUMNS;
+    //SankeyLayout.compute(Object columns, double width, double height) -> Object
+    static final MethodHandle LAYOUT;
+    //SankeyDataset.load(Path path).getGraph() -> Object
+    static final MethodHandle GRAPH;
+    //SankeyGraphLayout.compute(Object graph, double width, double height) -> Object
+    static final MethodHandle GRAPH_LAYOUT;
+    //SankeyGraphLayout.setParallel(boolean parallel)
+    static final MethodHandle SET_PARALLEL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> generator = Class.forName("SankeyDataGenerator");
+            Class<?> columns = Class.forName("SankeyColumns");
+            Class<?> layout = Class.forName("SankeyLayout");
+            Class<?> dataset = Class.forName("SankeyDataset");
+            Class<?> graph = Class.forName("SankeyGraph");
+            Class<?> graphLayout = Class.forName("SankeyGraphLayout");
+//            The benchmark helpers are package-private, the unnamed module opens them to this lookup
+            SEED = (long) MethodHandles.privateLookupIn(generator, lookup)
+                    .findStaticGetter(generator, "SEED", long.class).invokeExact();
+            LOAD = find(lookup, Class.forName("SankeyParseBenchmark"), "load",
+                    MethodType.methodType(long.class, String.class, Path.class));
+            WRITE_ROWS = find(lookup, generator, "writeRows",
+                    MethodType.methodType(void.class, Path.class, int.class, long.class));
+            WRITE_GRAPH = find(lookup, generator, "writeGraph",
+                    MethodType.methodType(void.class, Path.class, int.class, int.class, int.class, long.class));
+            BRANCHES = find(lookup, Class.forName("SankeyBenchmarks"), "branches",
+                    MethodType.methodType(String[].class, int.class, Map.class));
+            COLUMNS = find(lookup, columns, "of", MethodType.methodType(columns, Map.class, String[].class))
+                    .asType(MethodType.methodType(Object.class, Map.class, String[].class));
+            LAYOUT = find(lookup, layout, "compute", MethodType.methodType(layout, columns, double.class, double.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, double.class, double.class));
+            GRAPH = MethodHandles.filterReturnValue(
+                    find(lookup, dataset, "load", MethodType.methodType(dataset, Path.class)),
+                    lookup.findVirtual(dataset, "getGraph", MethodType.methodType(graph)))
+                    .asType(MethodType.methodType(Object.class, Path.class));
+            GRAPH_LAYOUT = find(lookup, graphLayout, "compute", MethodType.methodType(layout, graph, double.class, double.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, double.class, double.class));
+            SET_PARALLEL = find(lookup, graphLayout, "setParallel", MethodType.methodType(void.class, boolean.class));
+        }
+        catch (Throwable e){
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Sankey(){
+    }
+
+    static MethodHandle find(MethodHandles.Lookup lookup, Class<?> owner, String name, MethodType type) throws ReflectiveOperationException{
+        return MethodHandles.privateLookupIn(owner, lookup).findStatic(owner, name, type);
+    }
+}